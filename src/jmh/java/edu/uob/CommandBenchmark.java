@@ -0,0 +1,84 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks GameServer.handleCommand for every basic command and for advanced actions from extended-actions.xml.
+ * Commands that change the world are measured in pairs that undo each other (get/drop, there and back again)
+ * so every invocation sees the same state.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandBenchmark {
+
+    private GameServer server;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        //a second player standing at the riverbank holding the horn, for the advanced action benchmarks
+        server.handleCommand("bard: goto forest");
+        server.handleCommand("bard: goto riverbank");
+        server.handleCommand("bard: get horn");
+        server.handleCommand("bard: blow horn");
+        server.handleCommand("simon: get coin");
+    }
+
+    @Benchmark
+    public String look() {
+        return server.handleCommand("simon: look");
+    }
+
+    @Benchmark
+    public String inv() {
+        return server.handleCommand("simon: inv");
+    }
+
+    @Benchmark
+    public String health() {
+        return server.handleCommand("simon: health");
+    }
+
+    @Benchmark
+    public String getThenDrop() {
+        server.handleCommand("simon: get axe");
+        return server.handleCommand("simon: drop axe");
+    }
+
+    @Benchmark
+    public String gotoAndBack() {
+        server.handleCommand("simon: goto forest");
+        return server.handleCommand("simon: goto cabin");
+    }
+
+    /**
+     * produces the lumberjack, who is already here after setUp, so the world doesn't change
+     */
+    @Benchmark
+    public String advancedBlowHorn() {
+        return server.handleCommand("bard: blow the horn");
+    }
+
+    /**
+     * matches the "pay" trigger but the elf isn't in the cabin, so every candidate action is checked and rejected
+     */
+    @Benchmark
+    public String advancedNotDoable() {
+        return server.handleCommand("simon: pay the elf with the coin");
+    }
+
+    @Benchmark
+    public String unknownCommand() {
+        return server.handleCommand("simon: dance around the cabin");
+    }
+}
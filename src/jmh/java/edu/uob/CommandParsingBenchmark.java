@@ -0,0 +1,56 @@
+package edu.uob;
+
+import edu.uob.Actions.TokenisedCommand;
+import edu.uob.Actions.Vocabulary;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks turning a "name: command" line into a player name and tokens: the split/trim/toLowerCase/regex steps
+ * GameServer.handleCommand used to run against the single pass PlayerCommandLine parser.
+ * Run with -prof gc to see the bytes allocated per line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandParsingBenchmark {
+
+    private static final List<String> RESERVED_WORDS = Arrays.asList("inv", "goto", "inventory", "drop", "look");
+    private Vocabulary vocabulary;
+    private final String line = "Simon: Open the Trapdoor with the Key";
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        vocabulary = new Vocabulary(Arrays.asList("look", "inv", "inventory", "get", "drop", "goto", "health"),
+                server.entityIndex.getEntityNames(), server.gameActionMap.keySet());
+    }
+
+    @Benchmark
+    public TokenisedCommand splitAndRegex() {
+        if (!line.contains(":")) { return null; }
+        String[] inputParts = line.split(":", 2);
+        String playerName = inputParts[0].trim();
+        if (RESERVED_WORDS.contains(playerName.toLowerCase())) { return null; }
+        if (!Pattern.compile("[a-zA-Z\\s '-]+$").matcher(playerName).matches()) { return null; }
+        return vocabulary.tokenise(inputParts[1].trim().toLowerCase());
+    }
+
+    @Benchmark
+    public TokenisedCommand singlePass() {
+        PlayerCommandLine parsed = PlayerCommandLine.parse(line);
+        if (!parsed.hasSeparator() || !parsed.hasValidName()) { return null; }
+        return vocabulary.tokeniseLowerCase(line, parsed.getCommandStart(), parsed.getCommandEnd());
+    }
+}
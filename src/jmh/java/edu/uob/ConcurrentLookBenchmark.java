@@ -0,0 +1,65 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks many players looking around the same location at once, on their own and while another player
+ * keeps picking up and dropping the axe there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentLookBenchmark {
+
+    private final AtomicInteger playersJoined = new AtomicInteger();
+    private GameServer server;
+
+    @State(Scope.Thread)
+    public static class Looker {
+        private String command;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentLookBenchmark benchmark) {
+            String player = LoadGenerator.botName(benchmark.playersJoined.getAndIncrement());
+            command = player + ": look";
+            benchmark.server.handleCommand(command);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        server.handleCommand("simon: look");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String lookTogether(Looker looker) {
+        return server.handleCommand(looker.command);
+    }
+
+    @Benchmark
+    @Group("lookWhileChanging")
+    @GroupThreads(3)
+    public String look(Looker looker) {
+        return server.handleCommand(looker.command);
+    }
+
+    @Benchmark
+    @Group("lookWhileChanging")
+    @GroupThreads(1)
+    public String getThenDrop() {
+        server.handleCommand("simon: get axe");
+        return server.handleCommand("simon: drop axe");
+    }
+}
@@ -0,0 +1,36 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building a GameServer from its entities and actions files
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigLoadingBenchmark {
+
+    @Param({"basic", "extended"})
+    public String config;
+
+    private File entitiesFile;
+    private File actionsFile;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        entitiesFile = Paths.get("config" + File.separator + config + "-entities.dot").toAbsolutePath().toFile();
+        actionsFile = Paths.get("config" + File.separator + config + "-actions.xml").toAbsolutePath().toFile();
+    }
+
+    @Benchmark
+    public GameServer loadConfig() {
+        return new GameServer(entitiesFile, actionsFile);
+    }
+}
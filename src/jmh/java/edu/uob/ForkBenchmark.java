@@ -0,0 +1,70 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks forking a live extended world, against opening a room copied from the world as loaded.
+ * At the start of each trial a thousand forks or rooms are made of a world four players have been playing, and
+ * the heap they retain after a full GC is printed per copy. open measures making one more; with -prof gc its
+ * gc.alloc.rate.norm is what making it allocates. forkPlayMerge forks, picks up the coin in the fork and merges it back, dropping the coin where it was.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ForkBenchmark {
+
+    private static final int MEASURED_COPIES = 1000;
+
+    @Param({"fork", "room"})
+    public String copy;
+
+    private GameServer server;
+    private GameServer prototype;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+        prototype = new GameServer(entitiesFile, actionsFile);
+        for (int i = 0; i < 4; i++) {
+            server.handleCommand(LoadGenerator.botName(i) + ": look");
+        }
+        server.handleCommand(LoadGenerator.botName(0) + ": get axe");
+        server.handleCommand(LoadGenerator.botName(1) + ": goto forest");
+        List<GameServer> copies = new ArrayList<>();
+        copies.add(open());
+        long before = retainedHeap();
+        for (int i = 0; i < MEASURED_COPIES; i++) { copies.add(open()); }
+        long perCopy = (retainedHeap() - before) / MEASURED_COPIES;
+        System.out.printf("%n%s: %d bytes per copy, %d copies%n", copy, perCopy, copies.size());
+    }
+
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) { System.gc(); }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public GameServer open() {
+        return copy.equals("fork") ? server.fork(null) : new GameServer(prototype, server.getMetrics());
+    }
+
+    @Benchmark
+    public GameServer forkPlayMerge() {
+        GameServer fork = server.fork(null);
+        fork.handleCommand("party: get coin");
+        server.merge(fork);
+        return fork;
+    }
+}
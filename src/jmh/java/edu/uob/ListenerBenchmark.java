@@ -0,0 +1,121 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the blocking and non-blocking socket listeners under the same load, over real connections.
+ * The baseline is blockingListenOn, which serves every connection with blocking reads on a thread of its own
+ * (see ThreadPerConnectionListener); against it is nonBlockingListenOn, which multiplexes every connection on a
+ * selector with a worker per core. The session benchmarks have each client keep one session open and send looks
+ * over it, one at a time; oneShots opens a new connection for every look, as the original client does.
+ * Results are round trips per millisecond.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListenerBenchmark {
+
+    @Param({"blocking", "nonBlocking"})
+    public String listener;
+
+    private final AtomicInteger clientsJoined = new AtomicInteger();
+    private int port;
+
+    @State(Scope.Thread)
+    public static class Client {
+        private String player;
+        private Socket socket;
+        private BufferedReader reader;
+        private BufferedWriter writer;
+
+        @Setup(Level.Trial)
+        public void setUp(ListenerBenchmark benchmark) throws IOException {
+            player = LoadGenerator.botName(benchmark.clientsJoined.getAndIncrement());
+            socket = new Socket("localhost", benchmark.port);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            send(GameSession.SESSION_HANDSHAKE + player);
+        }
+
+        private String send(String line) throws IOException {
+            writer.write(line + "\n");
+            writer.flush();
+            return readResponse(reader);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        try (ServerSocket probe = new ServerSocket(0)) { port = probe.getLocalPort(); }
+        Thread thread = new Thread(() -> {
+            try {
+                if (listener.equals("blocking")) { server.blockingListenOn(port); } else { server.nonBlockingListenOn(port); }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        //the listeners never return, so the fork's JVM exits with the thread still running
+        thread.setDaemon(true);
+        thread.start();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                if (attempt == 100) { throw e; }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static String readResponse(BufferedReader reader) throws IOException {
+        StringBuilder response = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null && line.indexOf(GameServer.END_OF_TRANSMISSION) < 0) {
+            response.append(line).append("\n");
+        }
+        return response.toString();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String oneSession(Client client) throws IOException {
+        return client.send("look");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String eightSessions(Client client) throws IOException {
+        return client.send("look");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String oneShots(Client client) throws IOException {
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write(client.player + ": look\n");
+            writer.flush();
+            return readResponse(reader);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks opening rooms in a GameRooms host and measures how many fit in a gigabyte.
+ * At the start of each trial a thousand rooms are opened, each with the given number of players, and the heap
+ * they retain after a full GC is printed per room and as rooms per GB, next to GameRooms' own estimate.
+ * openRoom measures opening one more room; with -prof gc its gc.alloc.rate.norm is what opening it allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoomFootprintBenchmark {
+
+    private static final int MEASURED_ROOMS = 1000;
+
+    @Param({"basic", "extended"})
+    public String config;
+
+    @Param({"0", "4"})
+    public int players;
+
+    private GameRooms rooms;
+    private int opened = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File entitiesFile = Paths.get("config" + File.separator + config + "-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + config + "-actions.xml").toAbsolutePath().toFile();
+        rooms = new GameRooms(new GameServer(entitiesFile, actionsFile), new GameServer(entitiesFile, actionsFile), Integer.MAX_VALUE);
+        openRoom();
+        long before = retainedHeap();
+        for (int i = 0; i < MEASURED_ROOMS; i++) { openRoom(); }
+        long perRoom = (retainedHeap() - before) / MEASURED_ROOMS;
+        System.out.printf("%n%s world, %d players: %d bytes per room (estimated %d), %d rooms per GB%n", config, players,
+                perRoom, GameRooms.estimatedBytes(rooms.getRoom("room0")), (1L << 30) / perRoom);
+    }
+
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) { System.gc(); }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public GameServer openRoom() {
+        GameServer room = rooms.joinRoom("room" + opened++);
+        for (int i = 0; i < players; i++) {
+            room.handleCommand(LoadGenerator.botName(i) + ": look");
+        }
+        return room;
+    }
+}
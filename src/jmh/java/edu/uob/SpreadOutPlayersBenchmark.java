@@ -0,0 +1,61 @@
+package edu.uob;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks players sending random commands from their own threads, one thread against eight, to show how
+ * far per-location locking lets commands on different locations run in parallel.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpreadOutPlayersBenchmark {
+
+    private static final String[] COMMANDS = {"look", "inv", "health", "get axe", "get potion", "get coin", "get key",
+            "get log", "get shovel", "get horn", "drop axe", "drop potion", "drop coin", "drop key", "drop log",
+            "goto forest", "goto cabin", "goto cellar", "goto riverbank", "goto clearing", "open trapdoor",
+            "chop tree", "drink potion", "pay elf", "hit elf", "bridge river", "dig ground", "blow horn"};
+    private final AtomicInteger playersJoined = new AtomicInteger();
+    private GameServer server;
+
+    @State(Scope.Thread)
+    public static class RandomPlayer {
+        private String player;
+        private Random random;
+
+        @Setup(Level.Trial)
+        public void setUp(SpreadOutPlayersBenchmark benchmark) {
+            int number = benchmark.playersJoined.getAndIncrement();
+            player = LoadGenerator.botName(number) + ": ";
+            random = new Random(number);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        server = new GameServer(entitiesFile, actionsFile);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String oneThread(RandomPlayer player) {
+        return server.handleCommand(player.player + COMMANDS[player.random.nextInt(COMMANDS.length)]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String eightThreads(RandomPlayer player) {
+        return server.handleCommand(player.player + COMMANDS[player.random.nextInt(COMMANDS.length)]);
+    }
+}
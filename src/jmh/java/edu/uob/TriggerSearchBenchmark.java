@@ -0,0 +1,47 @@
+package edu.uob;
+
+import edu.uob.Actions.AdvancedCommandHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks AdvancedCommandHandler.findTriggersInPlayerMessage on short and long player messages
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TriggerSearchBenchmark {
+
+    private AdvancedCommandHandler handler;
+    private List<String> shortMessage;
+    private List<String> longMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        handler = new AdvancedCommandHandler(server.gameLocations, server.gameActionMap, server.entityIndex, server.players);
+        shortMessage = Arrays.asList("cut down tree".split("\\s+"));
+        longMessage = Arrays.asList("please could you very carefully cut down that tall pine tree with the razor sharp axe".split("\\s+"));
+    }
+
+    @Benchmark
+    public SortedSet<String> shortMessage() {
+        return handler.findTriggersInPlayerMessage(shortMessage);
+    }
+
+    @Benchmark
+    public SortedSet<String> longMessage() {
+        return handler.findTriggersInPlayerMessage(longMessage);
+    }
+}
@@ -1,116 +1,138 @@
 package edu.uob.Actions;
 
+import edu.uob.Entities.EntityIndex;
+import edu.uob.Entities.EntitySet;
 import edu.uob.Entities.GameEntityLocation;
 import edu.uob.Entities.Player;
+import edu.uob.Metrics.CommandPhase;
+import edu.uob.Metrics.CommandTimer;
+import edu.uob.Metrics.ServerMetrics;
 
 import java.util.*;
 
 public class AdvancedCommandHandler extends GameCommandHandler{
-    private final Set<String> allKeyPhrases;
     private GameEntityLocation storeroom;
 
-    public AdvancedCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, List<String> allEntities, HashMap<String, Player> players) {
-        super(gameLocations, gameActions, allEntities, players);
-        allKeyPhrases = new HashSet<>();
-        gameActions.forEach((key, value) -> allKeyPhrases.add(key));
-        storeroom = gameLocations.get("storeroom");
+    public AdvancedCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, EntityIndex entityIndex, Map<String, Player> players) {
+        this(gameLocations, gameActions, entityIndex, players, new ServerMetrics(gameActions.keySet()));
     }
 
-    public String handleAdvancedCommand(SortedSet<String> keyPhrases, List<String> tokenisedPlayerMessage, Player player){
-        Set<GameAction> doableActions = getDoableActions(keyPhrases, tokenisedPlayerMessage, player);
-        return executeAction(doableActions.iterator().next(), player);
+    public AdvancedCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, EntityIndex entityIndex, Map<String, Player> players, ServerMetrics metrics) {
+        this(gameLocations, gameActions, entityIndex, players, metrics, null);
     }
 
-    private String executeAction(GameAction action, Player player) {
-        GameEntityLocation currentLocation = gameLocations.get(player.getLocation());
-        produceEntities(currentLocation, action.getProducedEntities(), player);
-        consumeEntities(currentLocation, action.getConsumedEntities(), player);
-        return action.getNarration();
+    public AdvancedCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, EntityIndex entityIndex, Map<String, Player> players, ServerMetrics metrics, CommandDispatch dispatch) {
+        super(gameLocations, gameActions, entityIndex, players, metrics, dispatch);
+        storeroom = gameLocations.get("storeroom");
     }
 
-    private void produceEntities(GameEntityLocation currentLocation, Set<String> producedEntities, Player player){
-        for (String entity : producedEntities) {
-            if (entity.equals("health")) { player.increaseHealth(); }
-
-            else if (player.checkInventory(entity)) {
-                currentLocation.addArtefact(player.getItemFromInventory(entity));
-                player.getPlayerInventory().remove(entity);
-            }
 
-            else { processEntityTransfer(currentLocation, entity); }
-        }
-    }
-
-    private void consumeEntities(GameEntityLocation currentLocation, Set<String> consumedEntities, Player player){
-        for (String entity : consumedEntities) {
-            if (gameLocations.containsKey(entity) && !currentLocation.getName().equals(entity)) {
-                if (currentLocation.getPaths().contains(entity)) {
-                    currentLocation.getPaths().remove(entity);
-                } else throw new IllegalArgumentException("Location to consume doesn't exist!");
-            }
-
-            if (entity.equals("health")) {
-                consumePlayerHealth(currentLocation, player);
+    /**
+     * Finds and runs the single doable action for the key phrases in the player's command.
+     * Every entity a candidate action could produce or consume is located first, then the player's location,
+     * the storeroom and all of those source locations are locked together. If any entity moved in the meantime
+     * the locks are dropped and the lookup is repeated, so the action always runs against the locations it checked.
+     * @param keyPhrases key phrases found in the player command, longest first
+     * @param tokenisedPlayerMessage player message split by spaces
+     * @param player player performing the action, whose lock is held
+     * @return narration of the action performed
+     */
+    public String handleAdvancedCommand(SortedSet<String> keyPhrases, TokenisedCommand tokenisedPlayerMessage, Player player){
+        CommandTimer timer = CommandTimer.current();
+        timer.resolvedAs(metrics.forTrigger(keyPhrases.first()));
+        CommandDispatch tables = dispatch;
+        Set<String> actionEntities = getCandidateActionEntities(keyPhrases, tables);
+        GameEntityLocation startingLocation = gameLocations.get(player.getStartingLocation());
+        boolean mayDie = anyCandidateConsumesHealth(keyPhrases, tables);
+        while (true) {
+            GameEntityLocation currentLocation = gameLocations.get(player.getLocation());
+            Map<String, GameEntityLocation> entitySources = new HashMap<>();
+            for (String entity : actionEntities) {
+                entitySources.put(entity, findEntityLocation(entity));
             }
-
-            else {
-                GameEntityLocation sourceLocation = findEntityLocation(entity);
-                moveEntityToStoreroom(sourceLocation, entity, player);
+            Set<GameEntityLocation> lockSet = new HashSet<>(entitySources.values());
+            lockSet.add(currentLocation);
+            lockSet.add(storeroom);
+            if (mayDie) { lockSet.add(startingLocation); }
+            LocationLocks locks = LocationLocks.lock(lockSet);
+            try {
+                if (sourcesUnchanged(entitySources)) {
+                    CompiledAction action = getDoableActions(keyPhrases, tokenisedPlayerMessage, player, tables).iterator().next();
+                    timer.resolvedAs(metrics.forTrigger(findTriggerOf(action.getAction(), keyPhrases, tables)));
+                    timer.enter(CommandPhase.EXECUTE);
+                    String narration = executeAction(action, player, startingLocation, locks.getLockedLocations());
+                    timer.enter(CommandPhase.RENDER);
+                    return narration;
+                }
+            } finally {
+                locks.release();
             }
         }
     }
 
-    //helper functions for consuming / producing entities
-
-    public GameEntityLocation findEntityLocation(String entity) {
-        GameEntityLocation location;
-        for (Map.Entry<String, GameEntityLocation> locationEntry : gameLocations.entrySet()) {
-            location = locationEntry.getValue();
-            if (location.getEntitiesList().contains(entity)) { return location; }
+    /**
+     * @return the first (longest) of the player's key phrases that triggers the action
+     */
+    private String findTriggerOf(GameAction action, SortedSet<String> keyPhrases, CommandDispatch tables) {
+        for (String keyPhrase : keyPhrases) {
+            if (tables.getActions(keyPhrase).contains(action)) { return keyPhrase; }
         }
-        return null;
+        return keyPhrases.first();
     }
 
-    private void consumePlayerHealth(GameEntityLocation currentLocation, Player player){
-        if (player.getHealth() == 1) {
-            player.getPlayerInventory().forEach((key, value) -> currentLocation.addArtefact(value));
-            player.resetPlayer();
-        } else { player.reduceHealth(); }
+    private Set<String> getCandidateActionEntities(SortedSet<String> keyPhrases, CommandDispatch tables) {
+        Set<String> actionEntities = new HashSet<>();
+        for (String keyPhrase : keyPhrases) {
+            for (GameAction action : tables.getActions(keyPhrase)) {
+                actionEntities.addAll(action.getProducedEntities());
+                actionEntities.addAll(action.getConsumedEntities());
+            }
+        }
+        actionEntities.remove("health");
+        return actionEntities;
     }
 
-    private void processEntityTransfer(GameEntityLocation currentLocation, String entity){
-        GameEntityLocation sourceLocation = findEntityLocation(entity);
-
-        if (sourceLocation == null ) { throw new IllegalArgumentException("Entity to produce cannot be found!"); }
-
-        else {
-            transferEntity(sourceLocation.getArtefacts(), currentLocation.getArtefacts(), entity);
-            transferEntity(sourceLocation.getCharacters(), currentLocation.getCharacters(), entity);
-            transferEntity(sourceLocation.getFurniture(), currentLocation.getFurniture(), entity);
-            if (gameLocations.containsKey(entity) && !currentLocation.getName().equals(entity)) { currentLocation.addPath(entity); }
+    private boolean anyCandidateConsumesHealth(SortedSet<String> keyPhrases, CommandDispatch tables) {
+        for (String keyPhrase : keyPhrases) {
+            for (CompiledAction action : tables.getCompiledActions(keyPhrase)) {
+                if (action.getPlan().consumesHealth()) { return true; }
+            }
         }
+        return false;
     }
 
-    private void moveEntityToStoreroom(GameEntityLocation sourceLocation, String entity, Player player){
-        if (player.checkInventory(entity)) {
-            transferEntity(player.getPlayerInventory(), storeroom.getArtefacts(), entity);
+    /**
+     * @return true if every entity is still where it was found before the locks were taken. An entity that was in
+     * no location then (e.g. in an inventory) must still be in none, or it may now be somewhere that isn't locked.
+     */
+    private boolean sourcesUnchanged(Map<String, GameEntityLocation> entitySources) {
+        for (Map.Entry<String, GameEntityLocation> source : entitySources.entrySet()) {
+            if (findEntityLocation(source.getKey()) != source.getValue()) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        else if (sourceLocation == null) { throw new IllegalArgumentException("Cannot locate entity to be consumed!"); }
-
-        else {
-            transferEntity(sourceLocation.getCharacters(), storeroom.getCharacters(), entity);
-            transferEntity(sourceLocation.getFurniture(), storeroom.getFurniture(), entity);
-            transferEntity(sourceLocation.getArtefacts(), storeroom.getArtefacts(), entity);
-        }
+    /**
+     * Checks the action's whole execution plan before applying any of it, so a step that can't be done
+     * leaves the world as it was
+     */
+    private String executeAction(CompiledAction action, Player player, GameEntityLocation startingLocation, List<GameEntityLocation> lockedLocations) {
+        GameEntityLocation currentLocation = gameLocations.get(player.getLocation());
+        action.getPlan().validate(player, currentLocation, lockedLocations);
+        action.getPlan().apply(player, currentLocation, storeroom, startingLocation, lockedLocations);
+        return action.getAction().getNarration();
     }
 
-    private <T> void transferEntity(Map<String, T> source, Map<String, T> destination, String entity) {
-        T item = source.get(entity);
-        if (item != null){
-            source.remove(entity);
-            destination.put(entity, item);
-        }
+    /**
+     * Looks the entity up in the entity index. Without the location's lock the answer may already be out of date,
+     * so callers check it again once the location is locked.
+     * @param entity name of the entity to find
+     * @return the location containing the entity, or null if it isn't in any location
+     */
+    public GameEntityLocation findEntityLocation(String entity) {
+        return entityIndex.locationOf(entity);
     }
 
     //helper functions for parsing player command for the correct action
@@ -122,13 +144,14 @@ public class AdvancedCommandHandler extends GameCommandHandler{
      * @param player
      * @return
      */
-    private Set<GameAction> getDoableActions(SortedSet<String> keyPhrases, List<String> tokenisedPlayerMessage, Player player) {
-        Set<GameAction> doableActions = new HashSet<>();
+    private Set<CompiledAction> getDoableActions(SortedSet<String> keyPhrases, TokenisedCommand tokenisedPlayerMessage, Player player, CommandDispatch tables) {
+        Set<CompiledAction> doableActions = new HashSet<>();
 
-        //go through all potential commands and get the doable action
+        //go through all potential commands and get the doable action, skipping any whose subjects aren't mentioned
+        long[] mentioned = tables.actionsWithSubjectsIn(tokenisedPlayerMessage);
         for (String keyPhrase : keyPhrases) {
-            HashSet<GameAction> actions = gameActions.get(keyPhrase);
-            validateActionSet(actions, doableActions, tokenisedPlayerMessage, player);
+            CompiledAction[] actions = tables.getCompiledActions(keyPhrase);
+            validateActionSet(actions, mentioned, doableActions, tokenisedPlayerMessage, player);
         }
 
         if (doableActions.isEmpty()) {
@@ -139,85 +162,66 @@ public class AdvancedCommandHandler extends GameCommandHandler{
         return doableActions;
     }
 
-    private void validateActionSet(HashSet<GameAction> actions, Set<GameAction> doableActions, List<String> tokenisedPlayerMessage, Player player){
-        for (GameAction action : actions) {
-            if (checkActionIsDoable(action, tokenisedPlayerMessage, player)) {
+    private void validateActionSet(CompiledAction[] actions, long[] mentioned, Set<CompiledAction> doableActions, TokenisedCommand tokenisedPlayerMessage, Player player){
+        for (CompiledAction action : actions) {
+            if (action.isIn(mentioned) && checkActionIsDoable(action, tokenisedPlayerMessage, player)) {
                 doableActions.add(action);
             }
         }
     }
 
-    private boolean checkActionIsDoable(GameAction action, List<String> tokenisedPlayerMessage, Player player) {
-        Set<String> actionSubjects = action.getSubjects();
-        List<String> locationEntities = new ArrayList<>(gameLocations.get(player.getLocation()).getEntitiesList());
-        player.getPlayerInventory().forEach((key, value) -> locationEntities.add(key));
-
-        for (String subject : actionSubjects) {
-            if (!locationEntities.contains(subject)) {
-                return false;
-            }
+    /**
+     * Every subject must be in the player's location (which is locked) or inventory
+     */
+    private boolean checkActionIsDoable(CompiledAction action, TokenisedCommand tokenisedPlayerMessage, Player player) {
+        EntitySet here = gameLocations.get(player.getLocation()).getPresence();
+        if (!action.getSubjects().coveredBy(here, player.getInventoryPresence())) {
+            return false;
         }
-        return (validatePlayerMessage(action, tokenisedPlayerMessage) && checkEntitiesNotInPlayerInventories(action, player));
+        return (validatePlayerMessage(action.getAction(), tokenisedPlayerMessage) && checkEntitiesNotInPlayerInventories(action.getAction(), player));
     }
 
-    private boolean validatePlayerMessage(GameAction action, List<String> tokenisedPlayerMessage){
+    private boolean validatePlayerMessage(GameAction action, TokenisedCommand tokenisedPlayerMessage){
         boolean match = false;
-        for (String token : tokenisedPlayerMessage) {
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            //every subject is in the vocabulary, so an unknown word is neither a subject nor an entity
+            String token = tokenisedPlayerMessage.word(i);
+            if (token == null) { continue; }
             if (action.getSubjects().contains(token)) { match = true; }
-            if (!action.getSubjects().contains(token) && allEntities.contains(token)) { return false; }
+            if (!action.getSubjects().contains(token) && tokenisedPlayerMessage.getVocabulary().isEntity(tokenisedPlayerMessage.id(i))) { return false; }
         }
         return match;
     }
 
+    /**
+     * Looks up who holds each produced or consumed entity in the entity index, however many players are online
+     */
     private boolean checkEntitiesNotInPlayerInventories(GameAction action, Player player){
-        Set<String> actionEntities = new HashSet<>(action.getProducedEntities());
-        actionEntities.addAll(action.getConsumedEntities());
+        checkNotHeldByOtherPlayer(action.getProducedEntities(), player);
+        checkNotHeldByOtherPlayer(action.getConsumedEntities(), player);
+        return true;
+    }
+
+    private void checkNotHeldByOtherPlayer(Set<String> actionEntities, Player player) {
         for (String entity : actionEntities) {
-            for (Player gamePlayers : players.values()) {
-                if (gamePlayers.checkInventory(entity) && !gamePlayers.getName().equals(player.getName())) {
-                    throw new IllegalArgumentException("An item needed for this action is in another player's inventory!");
-                }
+            Player holder = entityIndex.holderOf(entity);
+            if (holder != null && !holder.getName().equals(player.getName())) {
+                throw new IllegalArgumentException("An item needed for this action is in another player's inventory!");
             }
         }
-        return true;
     }
 
     /**
-     * Parses player command and returns a set of all key phrases in the command
+     * Parses player command and returns a set of all key phrases in the command,
+     * using the trigger automaton compiled into the dispatch tables
      * @param tokenisedPlayerMessage Tokenised list of player message, split by spaces
      * @return A set of all potential commands found in the player message
      * The set is ordered from longest command first to avoid false positives
      * e.g. detecting the "cut" when the player meant "cut down" and trying to execute that command
      */
     public SortedSet<String> findTriggersInPlayerMessage(List<String> tokenisedPlayerMessage){
-        int maxPhraseLength = getPhraseLength();
-        SortedSet<String> foundKeyPhrases = new TreeSet<>( Collections.reverseOrder());
-
-        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
-            StringBuilder builder = new StringBuilder();
-
-            for (int j = i; j < i + maxPhraseLength && j < tokenisedPlayerMessage.size(); j++) {
-                if (j > i) { builder.append(" "); }
-                builder.append(tokenisedPlayerMessage.get(j));
-                String currentPhrase = builder.toString();
-
-                if (allKeyPhrases.contains(currentPhrase)) {
-                    foundKeyPhrases.add(currentPhrase);
-                }
-            }
-        }
-        return foundKeyPhrases;
-    }
-
-    /**
-     * This method goes through the list of trigger phrases and finds the one that has the most words in
-     * This is then used to create a "sliding window" to find triggers in the tokenised player command
-     * @return max phrase length
-     */
-    private int getPhraseLength() {
-        return allKeyPhrases.stream().mapToInt(
-                phrase -> phrase.split("\\s+").length)
-               .max().orElse(1);
+        CommandDispatch tables = dispatch;
+        return tables.findTriggers(tables.getVocabulary().tokenise(tokenisedPlayerMessage));
     }
 
 }
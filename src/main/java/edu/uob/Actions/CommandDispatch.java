@@ -0,0 +1,116 @@
+package edu.uob.Actions;
+
+import edu.uob.Entities.EntityIndex;
+
+import java.util.*;
+
+/**
+ * Immutable lookup tables compiled from the game's configuration: the vocabulary of word IDs, the trigger
+ * automaton, for every trigger the actions it can start, and for every subject word the actions that need it.
+ * Actions are compiled against the EntityIndex so their subjects can be checked as EntitySets. Built once when the configuration is loaded and
+ * swapped for a new instance if it changes, so command handling on any number of threads can read it without
+ * locking. Word IDs are only meaningful within one instance. Forks of a world share its instance, as their
+ * indexes hand out the same entity IDs.
+ */
+public final class CommandDispatch {
+    private final Map<String, Set<GameAction>> actionsByTrigger;
+    private final Vocabulary vocabulary;
+    private final TriggerAutomaton triggers;
+    private final Map<String, CompiledAction[]> compiledByTrigger = new HashMap<>();
+    //indexed by word ID
+    private final CompiledAction[][] actionsBySubject;
+    private final int actionCount;
+
+    private CommandDispatch(Map<String, Set<GameAction>> actionsByTrigger, Vocabulary vocabulary, EntityIndex entities) {
+        this.actionsByTrigger = actionsByTrigger;
+        this.vocabulary = vocabulary;
+        this.triggers = new TriggerAutomaton(actionsByTrigger.keySet(), vocabulary);
+
+        Map<GameAction, CompiledAction> compiled = new IdentityHashMap<>();
+        Map<Integer, List<CompiledAction>> bySubject = new HashMap<>();
+        actionsByTrigger.forEach((trigger, actions) -> {
+            //same order as getActions, so actions are checked in the same order whichever is used
+            List<CompiledAction> compiledActions = new ArrayList<>();
+            for (GameAction action : actions) {
+                compiledActions.add(compiled.computeIfAbsent(action, key -> {
+                    CompiledAction compiledAction = new CompiledAction(key, compiled.size(),
+                            entities.setOf(key.getSubjects()), ExecutionPlan.compile(key, entities));
+                    for (String subject : key.getSubjects()) {
+                        bySubject.computeIfAbsent(vocabulary.idOf(subject), id -> new ArrayList<>()).add(compiledAction);
+                    }
+                    return compiledAction;
+                }));
+            }
+            compiledByTrigger.put(trigger, compiledActions.toArray(new CompiledAction[0]));
+        });
+        actionCount = compiled.size();
+        actionsBySubject = new CompiledAction[vocabulary.size()][];
+        bySubject.forEach((id, actions) -> actionsBySubject[id] = actions.toArray(new CompiledAction[0]));
+    }
+
+    /**
+     * @param gameActions every trigger phrase mapped to the actions it triggers; copied, later changes aren't seen
+     * @param basicCommands the basic command words
+     * @param entities the game's entities: their names count as entities in a command, and action subjects are
+     *                 compiled to their IDs
+     */
+    public static CommandDispatch compile(Map<String, ? extends Set<GameAction>> gameActions,
+                                          Collection<String> basicCommands, EntityIndex entities) {
+        Map<String, Set<GameAction>> actionsByTrigger = new HashMap<>();
+        Set<String> actionWords = new LinkedHashSet<>();
+        gameActions.forEach((trigger, actions) -> {
+            actionsByTrigger.put(trigger, Collections.unmodifiableSet(new HashSet<>(actions)));
+            actionWords.addAll(Arrays.asList(trigger.split(" ", -1)));
+            for (GameAction action : actions) {
+                actionWords.addAll(action.getSubjects());
+                actionWords.addAll(action.getConsumedEntities());
+                actionWords.addAll(action.getProducedEntities());
+            }
+        });
+        Vocabulary vocabulary = new Vocabulary(basicCommands, entities.getEntityNames(), actionWords);
+        return new CommandDispatch(Collections.unmodifiableMap(actionsByTrigger), vocabulary, entities);
+    }
+
+    /**
+     * @return the actions started by the trigger, empty if it isn't one
+     */
+    public Set<GameAction> getActions(String trigger) {
+        return actionsByTrigger.getOrDefault(trigger, Collections.emptySet());
+    }
+
+    /**
+     * @return the compiled actions started by the trigger, in the same order as getActions
+     */
+    CompiledAction[] getCompiledActions(String trigger) {
+        return compiledByTrigger.getOrDefault(trigger, new CompiledAction[0]);
+    }
+
+    /**
+     * An action can only be done if the command names one of its subjects, so these are the only ones worth checking
+     * @param tokenisedPlayerMessage player message tokenised with this dispatch's vocabulary
+     * @return bitset of the numbers of every action with a subject in the message, for CompiledAction.isIn
+     */
+    long[] actionsWithSubjectsIn(TokenisedCommand tokenisedPlayerMessage) {
+        long[] actionNumbers = new long[(actionCount >>> 6) + 1];
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            int id = tokenisedPlayerMessage.id(i);
+            if (id == Vocabulary.UNKNOWN || actionsBySubject[id] == null) { continue; }
+            for (CompiledAction action : actionsBySubject[id]) {
+                actionNumbers[action.getNumber() >>> 6] |= 1L << action.getNumber();
+            }
+        }
+        return actionNumbers;
+    }
+
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * @param tokenisedPlayerMessage player message tokenised with this dispatch's vocabulary
+     * @return every trigger in the message, longest first
+     */
+    public SortedSet<String> findTriggers(TokenisedCommand tokenisedPlayerMessage) {
+        return triggers.findTriggers(tokenisedPlayerMessage);
+    }
+}
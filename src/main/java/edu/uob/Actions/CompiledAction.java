@@ -0,0 +1,37 @@
+package edu.uob.Actions;
+
+import edu.uob.Entities.EntitySet;
+
+/**
+ * A GameAction with its subjects compiled to an EntitySet, so checking that they are all in the player's location
+ * or inventory is a single coveredBy, and its effects compiled to an ExecutionPlan.
+ * Each action has a number unique within its CommandDispatch.
+ */
+final class CompiledAction {
+    private final GameAction action;
+    private final int number;
+    private final EntitySet subjects;
+    private final ExecutionPlan plan;
+
+    CompiledAction(GameAction action, int number, EntitySet subjects, ExecutionPlan plan) {
+        this.action = action;
+        this.number = number;
+        this.subjects = subjects;
+        this.plan = plan;
+    }
+
+    GameAction getAction() { return action; }
+
+    int getNumber() { return number; }
+
+    EntitySet getSubjects() { return subjects; }
+
+    ExecutionPlan getPlan() { return plan; }
+
+    /**
+     * @param actionNumbers bitset of action numbers, as returned by CommandDispatch.actionsWithSubjectsIn
+     */
+    boolean isIn(long[] actionNumbers) {
+        return (actionNumbers[number >>> 6] & (1L << number)) != 0;
+    }
+}
@@ -0,0 +1,163 @@
+package edu.uob.Actions;
+
+import edu.uob.Entities.EntityIndex;
+import edu.uob.Entities.GameEntityLocation;
+import edu.uob.Entities.Player;
+
+import java.util.*;
+
+/**
+ * What a GameAction does, worked out once when the actions are loaded: every produced and consumed entity is
+ * classified as a health change, a path to open or close, or an entity to move, and resolved to its EntityIndex ID.
+ * Locations are kept by name, so a plan works in any world whose index hands out the same IDs, as a fork's does.
+ * Running an action checks every step against the world first and only then applies them, so an
+ * action that can't finish changes nothing.
+ * The player's lock and the locks of the player's location, the storeroom, every location holding one of the
+ * action's entities and, if the plan consumes health, the starting location must be held while the plan is
+ * checked and applied.
+ */
+final class ExecutionPlan {
+    private enum Kind { HEALTH, PATH, TRANSFER }
+
+    private static final class Step {
+        private final Kind kind;
+        private final String name;
+        private final int id;
+
+        private Step(Kind kind, String name, int id) {
+            this.kind = kind;
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private final Step[] produced;
+    private final Step[] consumed;
+
+    private ExecutionPlan(Step[] produced, Step[] consumed) {
+        this.produced = produced;
+        this.consumed = consumed;
+    }
+
+    static ExecutionPlan compile(GameAction action, EntityIndex entities) {
+        return new ExecutionPlan(compileSteps(action.getProducedEntities(), entities),
+                compileSteps(action.getConsumedEntities(), entities));
+    }
+
+    private static Step[] compileSteps(Set<String> names, EntityIndex entities) {
+        List<Step> steps = new ArrayList<>();
+        for (String name : names) {
+            if (name.equals("health")) { steps.add(new Step(Kind.HEALTH, name, -1)); }
+            else if (entities.getLocation(name) != null) { steps.add(new Step(Kind.PATH, name, entities.idFor(name))); }
+            else { steps.add(new Step(Kind.TRANSFER, name, entities.idFor(name))); }
+        }
+        return steps.toArray(new Step[0]);
+    }
+
+    /**
+     * Checks that every step can be done, in the order they would be done.
+     * Nothing an earlier step does can make a later one fail: entities only move into locked locations, and
+     * producing a location only opens a path, so the checks are made against the world as it is now.
+     * @throws IllegalArgumentException describing the first step that can't be done
+     */
+    void validate(Player player, GameEntityLocation currentLocation, List<GameEntityLocation> lockedLocations) {
+        for (Step step : produced) {
+            if (step.kind == Kind.PATH && !isLocked(step.name, lockedLocations)
+                    || step.kind == Kind.TRANSFER && !isAvailable(step, player, lockedLocations)) {
+                throw new IllegalArgumentException("Entity to produce cannot be found!");
+            }
+        }
+        for (Step step : consumed) {
+            if (step.kind == Kind.PATH && !step.name.equals(currentLocation.getName())
+                    && !currentLocation.getPaths().contains(step.name) && !opensPath(step.name)) {
+                throw new IllegalArgumentException("Location to consume doesn't exist!");
+            }
+            if (step.kind == Kind.TRANSFER && !isAvailable(step, player, lockedLocations)) {
+                throw new IllegalArgumentException("Cannot locate entity to be consumed!");
+            }
+        }
+    }
+
+    /**
+     * Applies every step; validate must have passed under the same locks
+     */
+    void apply(Player player, GameEntityLocation currentLocation, GameEntityLocation storeroom,
+               GameEntityLocation startingLocation, List<GameEntityLocation> lockedLocations) {
+        for (Step step : produced) {
+            switch (step.kind) {
+                case HEALTH: player.increaseHealth(); break;
+                case PATH: if (!step.name.equals(currentLocation.getName())) { currentLocation.addPath(step.name); } break;
+                case TRANSFER: moveEntity(step, player, currentLocation, lockedLocations); break;
+            }
+        }
+        for (Step step : consumed) {
+            switch (step.kind) {
+                case HEALTH: consumePlayerHealth(currentLocation, startingLocation, player); break;
+                case PATH: if (!step.name.equals(currentLocation.getName())) { currentLocation.removePath(step.name); } break;
+                case TRANSFER: moveEntity(step, player, storeroom, lockedLocations); break;
+            }
+        }
+    }
+
+    private boolean opensPath(String location) {
+        for (Step step : produced) {
+            if (step.kind == Kind.PATH && step.name.equals(location)) { return true; }
+        }
+        return false;
+    }
+
+    private static boolean isLocked(String location, List<GameEntityLocation> lockedLocations) {
+        for (GameEntityLocation locked : lockedLocations) {
+            if (locked.getName().equals(location)) { return true; }
+        }
+        return false;
+    }
+
+    private static boolean isAvailable(Step step, Player player, List<GameEntityLocation> lockedLocations) {
+        return player.getInventoryPresence().contains(step.id) || findEntityLocation(step, lockedLocations) != null;
+    }
+
+    /**
+     * @return the locked location the entity is in, or null if it isn't in any of them
+     */
+    private static GameEntityLocation findEntityLocation(Step step, List<GameEntityLocation> lockedLocations) {
+        for (GameEntityLocation location : lockedLocations) {
+            if (location.getPresence().contains(step.id)) { return location; }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the entity from the player's inventory or from wherever it is into the destination
+     */
+    private static void moveEntity(Step step, Player player, GameEntityLocation destination, List<GameEntityLocation> lockedLocations) {
+        if (player.checkInventory(step.name)) {
+            destination.addArtefact(player.getItemFromInventory(step.name));
+            player.removeItemFromInventory(step.name);
+        } else {
+            findEntityLocation(step, lockedLocations).transferEntity(step.name, destination);
+        }
+    }
+
+    /**
+     * A player who runs out of health drops everything where they are and goes back to the starting location
+     */
+    private static void consumePlayerHealth(GameEntityLocation currentLocation, GameEntityLocation startingLocation, Player player){
+        if (player.getHealth() == 1) {
+            player.getPlayerInventory().forEach((key, value) -> currentLocation.addArtefact(value));
+            currentLocation.removeCharacter(player.getName());
+            player.resetPlayer();
+            startingLocation.addCharacter(player);
+        } else { player.reduceHealth(); }
+    }
+
+    /**
+     * @return true if applying the plan could send the player back to the starting location
+     */
+    boolean consumesHealth() {
+        for (Step step : consumed) {
+            if (step.kind == Kind.HEALTH) { return true; }
+        }
+        return false;
+    }
+}
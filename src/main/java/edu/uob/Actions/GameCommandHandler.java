@@ -1,23 +1,92 @@
 package edu.uob.Actions;
 
+import edu.uob.Entities.DeltaLooks;
+import edu.uob.Entities.EntityIndex;
 import edu.uob.Entities.GameEntityLocation;
+import edu.uob.Entities.LocationView;
 import edu.uob.Entities.Player;
+import edu.uob.Entities.PlayerView;
+import edu.uob.Metrics.CommandPhase;
+import edu.uob.Metrics.CommandTimer;
+import edu.uob.Metrics.ServerMetrics;
 
 import java.util.*;
 
+/**
+ * Handles commands for any number of players concurrently: the handler itself keeps no per-command state,
+ * and every command runs under its player's lock plus the locks of the locations it touches (see LocationLocks).
+ * The read-only commands (look, inv, health, route) are the exception: they read the views the player and their
+ * location published when they last changed, and only take the locks when those views are out of date.
+ * Each command is timed phase by phase (parse, resolve, execute, render) and recorded in the ServerMetrics.
+ * The basic command table and the CommandDispatch are built once, so handling a command needs no setup.
+ * Commands are tokenised into word IDs from the dispatch's Vocabulary and all matching is done on those IDs;
+ * a token's word is only looked at to find it in the game's maps or to mention it in a response.
+ */
 public class GameCommandHandler {
-    protected final List<String> basicCommands = Arrays.asList("goto", "look", "inv", "inventory", "drop", "get", "health");
+    /**
+     * A basic command, looked up by its command word
+     */
+    @FunctionalInterface
+    protected interface BasicCommand {
+        String handle(TokenisedCommand tokenisedPlayerMessage, Player player);
+    }
+
+    /**
+     * A basic command that changes nothing, answered from a view of its player
+     */
+    @FunctionalInterface
+    protected interface ReadOnlyCommand {
+        String handle(TokenisedCommand tokenisedPlayerMessage, PlayerView player, DeltaLooks looks);
+    }
+
+    protected final Map<String, BasicCommand> basicCommands;
+    protected final Map<String, ReadOnlyCommand> readOnlyCommands;
     protected HashMap<String, GameEntityLocation> gameLocations;
     protected HashMap<String, HashSet<GameAction>> gameActions;
-    protected Player player;
-    protected HashMap<String, Player> players;
-    protected final List<String> allEntities;
+    protected Map<String, Player> players;
+    protected final EntityIndex entityIndex;
+    protected final ServerMetrics metrics;
+    protected volatile CommandDispatch dispatch;
+    private final AdvancedCommandHandler advancedHandler;
+
+    public GameCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, EntityIndex entityIndex, Map<String, Player> players) {
+        this(gameLocations, gameActions, entityIndex, players, new ServerMetrics(gameActions.keySet()));
+    }
+
+    public GameCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, EntityIndex entityIndex, Map<String, Player> players, ServerMetrics metrics) {
+        this(gameLocations, gameActions, entityIndex, players, metrics, null);
+    }
 
-    public GameCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, List<String> allEntities, HashMap<String, Player> players) {
+    /**
+     * @param dispatch tables already compiled for an index with the same IDs, e.g. the ones of the world this
+     *                 one was forked from, or null to compile them here
+     */
+    public GameCommandHandler(HashMap<String, GameEntityLocation> gameLocations, HashMap<String, HashSet<GameAction>> gameActions, EntityIndex entityIndex, Map<String, Player> players, ServerMetrics metrics, CommandDispatch dispatch) {
         this.gameLocations = gameLocations;
         this.gameActions = gameActions;
-        this.allEntities = allEntities;
+        this.entityIndex = entityIndex;
         this.players = players;
+        this.metrics = metrics;
+        this.basicCommands = Map.of("look", this::handleLook, "inv", this::handleInv, "inventory", this::handleInv,
+                "get", this::handleGet, "drop", this::handleDrop, "goto", this::handleGoto, "health", this::handleHealth,
+                "route", this::handleRoute);
+        this.readOnlyCommands = Map.of("look", this::handleLook, "inv", this::handleInv, "inventory", this::handleInv,
+                "health", this::handleHealth, "route", this::handleRoute);
+        this.dispatch = dispatch != null ? dispatch : CommandDispatch.compile(gameActions, basicCommands.keySet(), entityIndex);
+        this.advancedHandler = this instanceof AdvancedCommandHandler ? (AdvancedCommandHandler) this
+                : new AdvancedCommandHandler(gameLocations, gameActions, entityIndex, players, metrics, this.dispatch);
+    }
+
+    public CommandDispatch getDispatch() { return dispatch; }
+
+    /**
+     * Recompiles the dispatch tables from gameActions and starts counting any new triggers; call after the actions
+     * have changed. Commands already running finish with the tables they started with.
+     */
+    public void rebuildDispatch() {
+        metrics.addTriggers(gameActions.keySet());
+        dispatch = CommandDispatch.compile(gameActions, basicCommands.keySet(), entityIndex);
+        if (advancedHandler != this) { advancedHandler.rebuildDispatch(); }
     }
 
     /**
@@ -29,13 +98,54 @@ public class GameCommandHandler {
      * @throws IllegalArgumentException used to catch any invalid commands given by the player
      */
     public String handleCommand(String playerMessage, Player player) throws IllegalArgumentException {
-        this.player = player;
+        return handleCommand(playerMessage, 0, playerMessage.length(), player);
+    }
 
-        AdvancedCommandHandler handler = new AdvancedCommandHandler(gameLocations, gameActions, allEntities, players);
-        List<String> tokenisedPlayerMessage = Arrays.asList(playerMessage.split("\\s+"));
+    /**
+     * Handles the command text[start, end) without copying it out of the text; the command is matched as if it
+     * had been lowercased
+     *
+     * @param text text containing the player's command, e.g. the whole line received from the client
+     * @param start index of the command's first character
+     * @param end index after the command's last character
+     * @param player current player object
+     * @return result of the command the player performed
+     * @throws IllegalArgumentException used to catch any invalid commands given by the player
+     */
+    public String handleCommand(CharSequence text, int start, int end, Player player) throws IllegalArgumentException {
+        return handleCommand(text, start, end, player, null);
+    }
+
+    /**
+     * As handleCommand(text, start, end, player), with looks only showing what has changed if looks isn't null
+     *
+     * @param looks the delta looks of the player's session, or null for full looks
+     */
+    public String handleCommand(CharSequence text, int start, int end, Player player, DeltaLooks looks) throws IllegalArgumentException {
+        CommandTimer timer = CommandTimer.current();
+        timer.begin(metrics.getUnknown());
+        boolean failed = true;
+        try {
+            String response = handlePlayerCommand(text, start, end, player, looks, timer);
+            failed = false;
+            return response;
+        } finally {
+            timer.end(failed);
+        }
+    }
 
+    /**
+     * Resolves the command without any lock, since that only reads the dispatch tables, then answers it from the
+     * player's published view if it changes nothing, or runs it under the player's lock, publishing the player's
+     * view again before letting go.
+     */
+    private String handlePlayerCommand(CharSequence text, int start, int end, Player player, DeltaLooks looks, CommandTimer timer) {
+        CommandDispatch tables = dispatch;
+        TokenisedCommand tokenisedPlayerMessage = tables.getVocabulary().tokeniseLowerCase(text, start, end);
+
+        timer.enter(CommandPhase.RESOLVE);
         String commandWord = findBasicCommandInPlayerMessage(tokenisedPlayerMessage);
-        SortedSet<String> triggersInPlayerMessage = handler.findTriggersInPlayerMessage(tokenisedPlayerMessage);
+        SortedSet<String> triggersInPlayerMessage = tables.findTriggers(tokenisedPlayerMessage);
 
         if (commandWord.isEmpty() && triggersInPlayerMessage.isEmpty()) {
             throw new IllegalArgumentException("Sorry! " + player.getName() + " doesn't know what to do");
@@ -45,91 +155,119 @@ public class GameCommandHandler {
             throw new IllegalArgumentException("Pick one command, it's hard to do two things at once :(");
         }
 
+        ReadOnlyCommand readOnly = null;
         if (triggersInPlayerMessage.isEmpty()) {
-            return handleBasicCommand(commandWord, tokenisedPlayerMessage);
-        } else return handler.handleAdvancedCommand(triggersInPlayerMessage, tokenisedPlayerMessage, player);
+            timer.resolvedAs(metrics.forCommand(commandWord));
+            readOnly = readOnlyCommands.get(commandWord);
+            PlayerView published = readOnly == null ? null : player.getPublishedView();
+            if (published != null) { return readOnly.handle(tokenisedPlayerMessage, published, looks); }
+        }
+
+        player.getLock().lock();
+        try {
+            if (readOnly != null) { return readOnly.handle(tokenisedPlayerMessage, player.getView(), looks); }
+            if (triggersInPlayerMessage.isEmpty()) { return handleBasicCommand(commandWord, tokenisedPlayerMessage, player); }
+            return advancedHandler.handleAdvancedCommand(triggersInPlayerMessage, tokenisedPlayerMessage, player);
+        } finally {
+            player.getView();
+            player.getLock().unlock();
+        }
     }
 
     /**
-     * Consists essentially of a switch statement that calls the appropriate method based on the command word
+     * Looks the command word up in the basic command table and runs that command
      *
      * @param commandWord        basic command found in the player message
      * @param tokenisedPlayerMessage player message split by spaces
+     * @param player             player issuing the command, whose lock is held
      * @return result of command
      */
-    public String handleBasicCommand(String commandWord, List<String> tokenisedPlayerMessage) {
-        switch (commandWord) {
-            case "look":
-                return handleLook(tokenisedPlayerMessage);
-            case "inv":
-            case "inventory":
-                return handleInv(tokenisedPlayerMessage);
-            case "get":
-                return handleGet(tokenisedPlayerMessage);
-            case "drop":
-                return handleDrop(tokenisedPlayerMessage);
-            case "goto":
-                return handleGoto(tokenisedPlayerMessage);
-            case "health":
-                return handleHealth(tokenisedPlayerMessage);
-            default:
-                throw new IllegalArgumentException("Sorry! " + player.getName() + " doesn't know what to do");
+    public String handleBasicCommand(String commandWord, TokenisedCommand tokenisedPlayerMessage, Player player) {
+        BasicCommand command = basicCommands.get(commandWord);
+        if (command == null) {
+            throw new IllegalArgumentException("Sorry! " + player.getName() + " doesn't know what to do");
         }
+        return command.handle(tokenisedPlayerMessage, player);
     }
 
     /**
      * method to execute the 'look' command
      *
+     * @param player player looking around
      * @return list of player's current location, as well as all GameEntity objects in the location
      */
-    public String handleLook(List<String> tokenisedPlayerMessage) {
+    public String handleLook(TokenisedCommand tokenisedPlayerMessage, Player player) {
+        return handleLook(tokenisedPlayerMessage, player.getView(), null);
+    }
+
+    private String handleLook(TokenisedCommand tokenisedPlayerMessage, PlayerView player, DeltaLooks looks) {
         GameEntityLocation location = gameLocations.get(player.getLocation());
 
         if (detectExtraEntities(tokenisedPlayerMessage, "look")) {
             throw new IllegalArgumentException("Error: extraneous entities detected in command!");
-        } else return getEntitiesInView(location).toString();
+        }
+        //most looks find the view published by an earlier one and need no lock at all
+        LocationView published = location.getPublishedView();
+        if (published != null) {
+            CommandTimer.current().enter(CommandPhase.RENDER);
+            return showView(published, player, looks);
+        }
+        LocationLocks locks = LocationLocks.lock(location);
+        try {
+            CommandTimer.current().enter(CommandPhase.RENDER);
+            return showView(location.getView(gameLocations), player, looks);
+        } finally {
+            locks.release();
+        }
     }
 
     /**
      * Method which executes the 'get' command
      *
      * @param tokenisedPlayerMessage player message split into individual words
+     * @param player player issuing the command
      * @return message to be returned to the player upon successful execution of the command
      * @throws IllegalArgumentException if the player tries to 'get' more than one item or if the item doesn't exist
      */
-    public String handleGet(List<String> tokenisedPlayerMessage) throws IllegalArgumentException {
+    public String handleGet(TokenisedCommand tokenisedPlayerMessage, Player player) throws IllegalArgumentException {
         GameEntityLocation location = gameLocations.get(player.getLocation());
-        String itemToGet = findItemToGet(tokenisedPlayerMessage, location);
+        LocationLocks locks = LocationLocks.lock(location);
+        try {
+            String itemToGet = findItemToGet(tokenisedPlayerMessage, location, player);
 
-        player.addItemToInventory(location.getArtefacts().get(itemToGet));
-        location.getArtefacts().remove(itemToGet);
+            CommandTimer.current().enter(CommandPhase.EXECUTE);
+            player.addItemToInventory(location.removeArtefact(itemToGet));
 
-        return ("You added the " + itemToGet + " to your inventory");
+            CommandTimer.current().enter(CommandPhase.RENDER);
+            return ("You added the " + itemToGet + " to your inventory");
+        } finally {
+            locks.release();
+        }
     }
 
     /**
      * Method that executes the inv/inventory command
      *
      * @param tokenisedPlayerMessage player message
+     * @param player player issuing the command
      * @return a list of what's in the player's inventory
      */
-    public String handleInv(List<String> tokenisedPlayerMessage) {
-        if (player.getPlayerInventory().isEmpty()) {
+    public String handleInv(TokenisedCommand tokenisedPlayerMessage, Player player) {
+        return handleInv(tokenisedPlayerMessage, player.getView(), null);
+    }
+
+    private String handleInv(TokenisedCommand tokenisedPlayerMessage, PlayerView player, DeltaLooks looks) {
+        if (player.isInventoryEmpty()) {
             return "Nothing to see here! Your inventory is empty";
         }
 
         if (detectExtraEntities(tokenisedPlayerMessage, "inv") || detectExtraEntities(tokenisedPlayerMessage, "inventory")) {
             throw new IllegalArgumentException("Error: extraneous entities detected in command!");
         } else {
+            CommandTimer.current().enter(CommandPhase.RENDER);
             StringBuilder builder = new StringBuilder();
             builder.append("Showing ").append(player.getName()).append("'s current inventory:\n");
-
-            player.getPlayerInventory().forEach((key, value) -> {
-                builder.append(key);
-                builder.append(", ");
-                builder.append(value.getDescription());
-                builder.append("\n");
-            });
+            builder.append(player.getInventory());
             return builder.toString();
         }
     }
@@ -138,78 +276,127 @@ public class GameCommandHandler {
      * Method to handle drop command
      *
      * @param tokenisedPlayerMessage player message
+     * @param player player issuing the command
      * @return confirmation message to the player stating what item they dropped
      */
-    public String handleDrop(List<String> tokenisedPlayerMessage) {
+    public String handleDrop(TokenisedCommand tokenisedPlayerMessage, Player player) {
         if (player.getPlayerInventory().isEmpty()) {
             return "You have nothing to drop";
         }
         GameEntityLocation location = gameLocations.get(player.getLocation());
-        String itemToDrop = findItemToDrop(tokenisedPlayerMessage);
-        location.addArtefact(player.getItemFromInventory(itemToDrop));
-        player.removeItemFromInventory(itemToDrop);
+        String itemToDrop = findItemToDrop(tokenisedPlayerMessage, player);
+        LocationLocks locks = LocationLocks.lock(location);
+        try {
+            CommandTimer.current().enter(CommandPhase.EXECUTE);
+            location.addArtefact(player.getItemFromInventory(itemToDrop));
+            player.removeItemFromInventory(itemToDrop);
+        } finally {
+            locks.release();
+        }
 
+        CommandTimer.current().enter(CommandPhase.RENDER);
         return (itemToDrop + " was dropped somewhere in the " + player.getLocation());
     }
 
     /**
      * method for handling the goto command
+     * The destination is looked up under the current location's lock, then both locations are locked in order;
+     * if the path was closed in between the lookup is simply repeated.
      * @param tokenisedPlayerMessage player message
+     * @param player player issuing the command
      * @return confirmation message telling the player where they have now travelled to
      */
-    public String handleGoto(List<String> tokenisedPlayerMessage) {
+    public String handleGoto(TokenisedCommand tokenisedPlayerMessage, Player player) {
         GameEntityLocation location = gameLocations.get(player.getLocation());
-        String path = findPathToGoTo(tokenisedPlayerMessage, location);
-        player.setLocation(path);
-        location.getCharacters().remove(player.getName());
-        GameEntityLocation newLocation = gameLocations.get(player.getLocation());
-        newLocation.addCharacter(player);
-        return ("You have travelled to: " + player.getLocation() + ", " + gameLocations.get(path).getDescription());
+        while (true) {
+            String path;
+            LocationLocks locks = LocationLocks.lock(location);
+            try {
+                path = findPathToGoTo(tokenisedPlayerMessage, location);
+            } finally {
+                locks.release();
+            }
+            GameEntityLocation newLocation = gameLocations.get(path);
+            locks = LocationLocks.lock(location, newLocation);
+            try {
+                if (location.getPaths().contains(path)) {
+                    CommandTimer.current().enter(CommandPhase.EXECUTE);
+                    player.setLocation(path);
+                    location.removeCharacter(player.getName());
+                    newLocation.addCharacter(player);
+                    CommandTimer.current().enter(CommandPhase.RENDER);
+                    return ("You have travelled to: " + player.getLocation() + ", " + newLocation.getDescription());
+                }
+            } finally {
+                locks.release();
+            }
+        }
     }
 
     /**
      * method for handling the health command
      * @param tokenisedPlayerMessage player message
+     * @param player player issuing the command
      * @return confirmation message telling the player how much health they have left
      */
-    public String handleHealth(List<String> tokenisedPlayerMessage) {
+    public String handleHealth(TokenisedCommand tokenisedPlayerMessage, Player player) {
+        return handleHealth(tokenisedPlayerMessage, player.getView(), null);
+    }
+
+    private String handleHealth(TokenisedCommand tokenisedPlayerMessage, PlayerView player, DeltaLooks looks) {
         if (detectExtraEntities(tokenisedPlayerMessage, "health")) {
             throw new IllegalArgumentException("Error: extraneous entities detected in command!");
         }
+        CommandTimer.current().enter(CommandPhase.RENDER);
         return "You have " + player.getHealth() + " health points remaining";
     }
 
-    // Helper methods for handling commands
-
     /**
-     * used in the look command to get a list of everything that should be in the player view
-     * @param currentLocation location the player's in
-     * @return StringBuilder containing everything that the player can see
+     * method for handling the 'route to' command, which finds the shortest way to another location.
+     * The route is read from the location graph, so no location locks are needed.
+     * @param tokenisedPlayerMessage player message
+     * @param player player issuing the command
+     * @return the locations to go to one after the other to get there
      */
-    public StringBuilder getEntitiesInView(GameEntityLocation currentLocation) {
-        StringBuilder stringBuilder = new StringBuilder();
+    public String handleRoute(TokenisedCommand tokenisedPlayerMessage, Player player) {
+        return handleRoute(tokenisedPlayerMessage, player.getView(), null);
+    }
 
-        stringBuilder.append("You are in a: ").append(currentLocation.getName()).append(", ").append(currentLocation.getDescription()).append("\n");
-        if (!currentLocation.getArtefacts().isEmpty()) {
-            stringBuilder.append("You see items:\n");
-            stringBuilder.append(currentLocation.entityToString(currentLocation.getArtefacts()));
-        }
-        if (!currentLocation.getFurniture().isEmpty()) {
-            stringBuilder.append("You see furniture:\n");
-            stringBuilder.append(currentLocation.entityToString(currentLocation.getFurniture()));
+    private String handleRoute(TokenisedCommand tokenisedPlayerMessage, PlayerView player, DeltaLooks looks) {
+        String destination = findRouteDestination(tokenisedPlayerMessage);
+        CommandTimer.current().enter(CommandPhase.EXECUTE);
+        List<String> route = entityIndex.getLocationGraph().route(player.getLocation(), destination);
+        CommandTimer.current().enter(CommandPhase.RENDER);
+        if (route == null) {
+            return "There is no way to the " + destination + " from here";
         }
-        //remove current player from characters:
-        currentLocation.getCharacters().remove(player.getName());
-        if (!currentLocation.getCharacters().isEmpty()) {
-            stringBuilder.append("You see characters:\n");
-            stringBuilder.append(currentLocation.entityToString(currentLocation.getCharacters()));
+        if (route.isEmpty()) {
+            return "You are already in the " + destination;
         }
-        //add player back in:
-        currentLocation.addCharacter(player);
-        if (!currentLocation.getPaths().isEmpty()) {
-            stringBuilder.append(getPathList(currentLocation));
-        }
-        return stringBuilder;
+        return "To get to the " + destination + " go to: " + String.join(", ", route);
+    }
+
+    // Helper methods for handling commands
+
+    /**
+     * used in the look command to get a list of everything that should be in the player view.
+     * The location's view is only rendered again after the location has changed, and looking changes nothing.
+     * @param currentLocation location the player's in, which must be locked by the caller
+     * @param player          player looking around, who must be locked by the caller
+     * @return everything that the player can see
+     */
+    public String getEntitiesInView(GameEntityLocation currentLocation, Player player) {
+        return currentLocation.getView(gameLocations).render(player.getName());
+    }
+
+    /**
+     * @param view what the player's location looks like now
+     * @param player view of the player looking around
+     * @param looks the delta looks of the player's session, or null
+     * @return the view, or what has changed in it if the session has delta looks on
+     */
+    private String showView(LocationView view, PlayerView player, DeltaLooks looks) {
+        return looks == null ? view.render(player.getName()) : looks.show(view, player.getName());
     }
 
     /**
@@ -218,12 +405,13 @@ public class GameCommandHandler {
      * @param command command to skip over
      * @return true if extraneous entities present in player command
      */
-    public boolean detectExtraEntities(List<String> tokenisedPlayerMessage, String command) {
-        for (String string : tokenisedPlayerMessage) {
-            if (!string.equals(command)) {
-                if (allEntities.contains(string)) {
-                    return true;
-                }
+    public boolean detectExtraEntities(TokenisedCommand tokenisedPlayerMessage, String command) {
+        Vocabulary vocabulary = tokenisedPlayerMessage.getVocabulary();
+        int commandId = vocabulary.idOf(command);
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            int id = tokenisedPlayerMessage.id(i);
+            if (id != commandId && vocabulary.isEntity(id)) {
+                return true;
             }
         }
         return false;
@@ -250,17 +438,21 @@ public class GameCommandHandler {
      * Searches location for item player wants to add to inventory
      * @param tokenisedPlayerMessage player message split into individual words
      * @param location           current location the player's in
+     * @param player             player picking the item up
      * @return item that the player wants to get
      */
-    public String findItemToGet(List<String> tokenisedPlayerMessage, GameEntityLocation location) {
+    public String findItemToGet(TokenisedCommand tokenisedPlayerMessage, GameEntityLocation location, Player player) {
         int count = 0;
         String itemToGet = "";
-        for (String item : tokenisedPlayerMessage) {
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            //words the game doesn't know can't be an artefact or any other entity
+            String item = tokenisedPlayerMessage.word(i);
+            if (item == null) { continue; }
             if (location.getArtefacts().containsKey(item) && !itemToGet.equals(item)) {
                 count++;
                 itemToGet = item;
             }
-            if (!location.getArtefacts().containsKey(item) && allEntities.contains(item)) {
+            if (!location.getArtefacts().containsKey(item) && tokenisedPlayerMessage.getVocabulary().isEntity(tokenisedPlayerMessage.id(i))) {
                 throw new IllegalArgumentException("There isn't a " + item + " here!");
             }
         }
@@ -277,17 +469,20 @@ public class GameCommandHandler {
      * Searches player inventory for the item to drop
      *
      * @param tokenisedPlayerMessage player message split up into tokens
+     * @param player             player dropping the item
      * @return name of artefact to drop
      */
-    public String findItemToDrop(List<String> tokenisedPlayerMessage) {
+    public String findItemToDrop(TokenisedCommand tokenisedPlayerMessage, Player player) {
         String item = "";
         int count = 0;
-        for (String string : tokenisedPlayerMessage) {
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            String string = tokenisedPlayerMessage.word(i);
+            if (string == null) { continue; }
             if (player.checkInventory(string)) {
                 item = player.getPlayerInventory().get(string).getName();
                 count++;
             }
-            if (!player.checkInventory(string) && allEntities.contains(string)) {
+            if (!player.checkInventory(string) && tokenisedPlayerMessage.getVocabulary().isEntity(tokenisedPlayerMessage.id(i))) {
                 throw new IllegalArgumentException(player.getName() + " can't find the " + item + "!");
             }
         }
@@ -307,18 +502,21 @@ public class GameCommandHandler {
      * @param location           location the player's in
      * @return path to go to
      */
-    public String findPathToGoTo(List<String> tokenisedPlayerMessage, GameEntityLocation location) {
+    public String findPathToGoTo(TokenisedCommand tokenisedPlayerMessage, GameEntityLocation location) {
         String path = "";
         int count = 0;
-        for (String string : tokenisedPlayerMessage) {
-            if (location.getPaths().contains(string.toLowerCase())) {
-                path = string.toLowerCase();
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            //location names are all in the vocabulary, so an unknown word can't be a path
+            String string = tokenisedPlayerMessage.word(i);
+            if (string == null) { continue; }
+            if (location.getPaths().contains(string)) {
+                path = string;
                 count++;
                 if (count > 1) {
                     throw new IllegalArgumentException("You can't go to more than one place at once!");
                 }
             }
-            if (!location.getPaths().contains(string) && allEntities.contains(string)) {
+            if (!location.getPaths().contains(string) && tokenisedPlayerMessage.getVocabulary().isEntity(tokenisedPlayerMessage.id(i))) {
                 throw new IllegalArgumentException("You can't use a " + string + " to travel from here!");
             }
         }
@@ -328,25 +526,51 @@ public class GameCommandHandler {
         return path;
     }
 
+    /**
+     * this function gets the location the player wants a route to from their input
+     *
+     * @param tokenisedPlayerMessage player command tokenised
+     * @return location to find the way to
+     */
+    public String findRouteDestination(TokenisedCommand tokenisedPlayerMessage) {
+        String destination = null;
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            String string = tokenisedPlayerMessage.word(i);
+            if (string == null || !tokenisedPlayerMessage.getVocabulary().isEntity(tokenisedPlayerMessage.id(i))) { continue; }
+            if (entityIndex.kindOf(string) != EntityIndex.Kind.LOCATION) {
+                throw new IllegalArgumentException("A " + string + " isn't somewhere you can go!");
+            }
+            if (destination != null && !destination.equals(string)) {
+                throw new IllegalArgumentException("You can only find the way to one place at a time!");
+            }
+            destination = string;
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("Where do you want to go? Try 'route to' and a location");
+        }
+        return destination;
+    }
+
     /**
      * checks for a basic command
      *
      * @param tokenisedPlayerMessage player message split into individual words
      * @return the basic command to be executed
      */
-    public String findBasicCommandInPlayerMessage(List<String> tokenisedPlayerMessage) {
+    public String findBasicCommandInPlayerMessage(TokenisedCommand tokenisedPlayerMessage) {
         int matches = 0;
-        String keyword = "";
-        for (String commandWord : tokenisedPlayerMessage) {
-            if (basicCommands.contains(commandWord) && !keyword.equals(commandWord)) {
-                keyword = commandWord.toLowerCase();
+        int keywordId = Vocabulary.UNKNOWN;
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            int id = tokenisedPlayerMessage.id(i);
+            if (tokenisedPlayerMessage.getVocabulary().isBasicCommand(id) && id != keywordId) {
+                keywordId = id;
                 matches++;
             }
             if (matches > 1) {
                 throw new IllegalArgumentException("Pick one command, it's hard to do two things at once :(");
             }
         }
-        return keyword;
+        return keywordId == Vocabulary.UNKNOWN ? "" : tokenisedPlayerMessage.getVocabulary().wordOf(keywordId);
     }
 
 }
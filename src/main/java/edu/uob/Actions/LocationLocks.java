@@ -0,0 +1,58 @@
+package edu.uob.Actions;
+
+import edu.uob.Entities.GameEntityLocation;
+
+import java.util.*;
+
+/**
+ * Holds the locks of a set of locations for the duration of one command.
+ * Locking rules, which keep commands on different players deadlock free:
+ * a command first takes its own player's lock, then takes every location lock it needs at once through
+ * this class, which always acquires them in location name order. A command never takes another player's lock,
+ * and never takes a further location lock while it holds some (it releases and starts again instead).
+ * The storeroom is an ordinary location as far as locking is concerned.
+ */
+public final class LocationLocks {
+    private final List<GameEntityLocation> lockedLocations;
+
+    private LocationLocks(List<GameEntityLocation> lockedLocations) {
+        this.lockedLocations = lockedLocations;
+    }
+
+    /**
+     * Locks all the given locations in name order
+     * @param locations locations the command will read or modify, duplicates and nulls are ignored
+     * @return handle used to release the locks again
+     */
+    public static LocationLocks lock(Collection<GameEntityLocation> locations) {
+        TreeMap<String, GameEntityLocation> ordered = new TreeMap<>();
+        for (GameEntityLocation location : locations) {
+            if (location != null) { ordered.put(location.getName(), location); }
+        }
+        List<GameEntityLocation> lockedLocations = new ArrayList<>(ordered.values());
+        for (GameEntityLocation location : lockedLocations) {
+            location.getLock().lock();
+        }
+        return new LocationLocks(lockedLocations);
+    }
+
+    public static LocationLocks lock(GameEntityLocation... locations) {
+        return lock(Arrays.asList(locations));
+    }
+
+    /**
+     * @return the locations currently held, in locking order
+     */
+    public List<GameEntityLocation> getLockedLocations() {
+        return lockedLocations;
+    }
+
+    /**
+     * Releases the locks in the reverse order they were taken
+     */
+    public void release() {
+        for (int i = lockedLocations.size() - 1; i >= 0; i--) {
+            lockedLocations.get(i).getLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package edu.uob.Actions;
+
+/**
+ * A player command as the word IDs of its tokens, in order, with the Vocabulary they belong to
+ */
+public final class TokenisedCommand {
+    private final int[] ids;
+    private final int size;
+    private final Vocabulary vocabulary;
+
+    TokenisedCommand(int[] ids, Vocabulary vocabulary) {
+        this(ids, ids.length, vocabulary);
+    }
+
+    /**
+     * @param ids array holding the IDs, which may have spare room at the end
+     * @param size number of tokens
+     */
+    TokenisedCommand(int[] ids, int size, Vocabulary vocabulary) {
+        this.ids = ids;
+        this.size = size;
+        this.vocabulary = vocabulary;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @return the token's word, or null if the game doesn't know it
+     */
+    public String word(int index) {
+        return vocabulary.wordOf(ids[index]);
+    }
+
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+}
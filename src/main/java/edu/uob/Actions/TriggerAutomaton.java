@@ -0,0 +1,118 @@
+package edu.uob.Actions;
+
+import java.util.*;
+
+/**
+ * Aho-Corasick automaton over word IDs, built once from the action trigger phrases.
+ * Finds every trigger in a tokenised player message in a single pass over the tokens: each token is one
+ * binary search over the current state's transitions (plus failure transitions), and nothing is allocated
+ * while matching apart from the result set.
+ * Trigger phrases are split on single spaces, so a phrase matches exactly when the tokens joined with " "
+ * equal it, as in the old sliding-window search. Immutable once built and safe to share between threads.
+ */
+public final class TriggerAutomaton {
+    private final State root = new State();
+
+    private static final class State {
+        //transitions while building, frozen into the sorted arrays below
+        private Map<Integer, State> building = new HashMap<>();
+        private int[] keys;
+        private State[] targets;
+        private State failure;
+        /** the trigger ending here, or null */
+        private String phrase;
+        /** nearest state along the failure chain that ends a trigger, or null */
+        private State output;
+
+        private State next(int id) {
+            int index = Arrays.binarySearch(keys, id);
+            return index < 0 ? null : targets[index];
+        }
+
+        private void freeze() {
+            keys = new int[building.size()];
+            targets = new State[building.size()];
+            int i = 0;
+            for (Map.Entry<Integer, State> edge : new TreeMap<>(building).entrySet()) {
+                keys[i] = edge.getKey();
+                targets[i++] = edge.getValue();
+            }
+            building = null;
+        }
+    }
+
+    /**
+     * @param phrases every trigger phrase in the game, already lower case
+     * @param vocabulary must contain every word of every phrase
+     */
+    public TriggerAutomaton(Collection<String> phrases, Vocabulary vocabulary) {
+        List<State> states = new ArrayList<>();
+        states.add(root);
+        for (String phrase : phrases) {
+            State state = root;
+            for (String word : phrase.split(" ", -1)) {
+                int id = vocabulary.idOf(word);
+                if (id == Vocabulary.UNKNOWN) { throw new IllegalArgumentException("Trigger word " + word + " is not in the vocabulary"); }
+                state = state.building.computeIfAbsent(id, key -> {
+                    State child = new State();
+                    states.add(child);
+                    return child;
+                });
+            }
+            state.phrase = phrase;
+        }
+        for (State state : states) {
+            state.freeze();
+        }
+        linkFailures();
+    }
+
+    /**
+     * Breadth first, so the failure state of every shallower state is known before it is needed
+     */
+    private void linkFailures() {
+        Deque<State> queue = new ArrayDeque<>();
+        root.failure = root;
+        for (State child : root.targets) {
+            child.failure = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            for (int i = 0; i < state.keys.length; i++) {
+                State child = state.targets[i];
+                State fallback = state.failure;
+                while (fallback != root && fallback.next(state.keys[i]) == null) {
+                    fallback = fallback.failure;
+                }
+                State target = fallback.next(state.keys[i]);
+                child.failure = target != null ? target : root;
+                child.output = child.failure.phrase != null ? child.failure : child.failure.output;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @param tokenisedPlayerMessage player message as word IDs from the automaton's vocabulary
+     * @return every trigger phrase in the message, ordered from longest (in reverse natural order) first,
+     * e.g. "cut down" before "cut"
+     */
+    public SortedSet<String> findTriggers(TokenisedCommand tokenisedPlayerMessage) {
+        SortedSet<String> found = new TreeSet<>(Collections.reverseOrder());
+        State state = root;
+        for (int i = 0; i < tokenisedPlayerMessage.size(); i++) {
+            int id = tokenisedPlayerMessage.id(i);
+            State next = state.next(id);
+            while (next == null && state != root) {
+                state = state.failure;
+                next = state.next(id);
+            }
+            state = next == null ? root : next;
+            for (State match = state.phrase != null ? state : state.output; match != null; match = match.output) {
+                found.add(match.phrase);
+            }
+        }
+        return found;
+    }
+}
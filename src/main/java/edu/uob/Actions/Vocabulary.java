@@ -0,0 +1,198 @@
+package edu.uob.Actions;
+
+import java.util.*;
+
+/**
+ * Every word the game can react to, interned with an int ID: basic command words, entity and location names,
+ * trigger words and the entities named in actions. Built at load time and immutable after that.
+ * Commands are tokenised straight into arrays of IDs without creating a String per word; words the game doesn't
+ * know get UNKNOWN, which can never match anything, so comparing IDs gives the same answers as comparing strings.
+ */
+public final class Vocabulary {
+    public static final int UNKNOWN = -1;
+    private final String[] words;
+    private final boolean[] basicCommands;
+    private final boolean[] entities;
+    //open addressing hash table from word to ID, using String.hashCode so lookups can hash a region of a command
+    private final String[] slotWords;
+    private final int[] slotIds;
+    private final int mask;
+
+    /**
+     * @param basicCommandWords the basic command words, e.g. "look" and "inv"
+     * @param entityNames every entity and location name that counts as an entity in a command
+     * @param otherWords anything else tokens are compared against, e.g. the words of trigger phrases
+     */
+    public Vocabulary(Collection<String> basicCommandWords, Collection<String> entityNames, Collection<String> otherWords) {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (Collection<String> group : Arrays.asList(basicCommandWords, entityNames, otherWords)) {
+            for (String word : group) {
+                ids.putIfAbsent(word, ids.size());
+            }
+        }
+        words = ids.keySet().toArray(new String[0]);
+        basicCommands = new boolean[words.length];
+        entities = new boolean[words.length];
+        for (String word : basicCommandWords) { basicCommands[ids.get(word)] = true; }
+        for (String word : entityNames) { entities[ids.get(word)] = true; }
+
+        int capacity = Integer.highestOneBit(Math.max(2, words.length * 2 - 1)) << 1;
+        slotWords = new String[capacity];
+        slotIds = new int[capacity];
+        mask = capacity - 1;
+        for (int id = 0; id < words.length; id++) {
+            int slot = spread(words[id].hashCode()) & mask;
+            while (slotWords[slot] != null) { slot = (slot + 1) & mask; }
+            slotWords[slot] = words[id];
+            slotIds[slot] = id;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the ID of the word, or UNKNOWN
+     */
+    public int idOf(String word) {
+        return idOf(word, 0, word.length());
+    }
+
+    /**
+     * Looks up the word text[start, end) without copying it out of the text
+     * @return the ID of the word, or UNKNOWN
+     */
+    public int idOf(String text, int start, int end) {
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int slot = spread(hash) & mask;
+        String candidate;
+        while ((candidate = slotWords[slot]) != null) {
+            if (candidate.length() == length && text.regionMatches(start, candidate, 0, length)) { return slotIds[slot]; }
+            slot = (slot + 1) & mask;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Looks up the word text[start, end) as if it had been lowercased, without copying it out of the text.
+     * ASCII letters are lowercased while hashing and comparing; a word with any other character is copied and
+     * lowercased with toLowerCase, so the answer is always the same as lowercasing the text first.
+     * @return the ID of the lowercased word, or UNKNOWN
+     */
+    public int idOfLowerCase(CharSequence text, int start, int end) {
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) { return idOf(text.subSequence(start, end).toString().toLowerCase()); }
+            hash = 31 * hash + toLowerAscii(c);
+        }
+        int slot = spread(hash) & mask;
+        String candidate;
+        while ((candidate = slotWords[slot]) != null) {
+            if (candidate.length() == length && matchesLowerCase(text, start, candidate)) { return slotIds[slot]; }
+            slot = (slot + 1) & mask;
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean matchesLowerCase(CharSequence text, int start, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (toLowerAscii(text.charAt(start + i)) != word.charAt(i)) { return false; }
+        }
+        return true;
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * @return the interned word for the ID, or null for UNKNOWN
+     */
+    public String wordOf(int id) {
+        return id == UNKNOWN ? null : words[id];
+    }
+
+    public boolean isBasicCommand(int id) {
+        return id != UNKNOWN && basicCommands[id];
+    }
+
+    public boolean isEntity(int id) {
+        return id != UNKNOWN && entities[id];
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * Splits the command on whitespace, like split("\\s+") on a trimmed command, and looks every word up
+     */
+    public TokenisedCommand tokenise(String command) {
+        int count = 0;
+        boolean inWord = false;
+        for (int i = 0; i < command.length(); i++) {
+            boolean space = isWhitespace(command.charAt(i));
+            if (!space && !inWord) { count++; }
+            inWord = !space;
+        }
+        int[] ids = new int[count];
+        int token = 0;
+        int start = -1;
+        for (int i = 0; i <= command.length(); i++) {
+            boolean space = i == command.length() || isWhitespace(command.charAt(i));
+            if (!space && start < 0) {
+                start = i;
+            } else if (space && start >= 0) {
+                ids[token++] = idOf(command, start, i);
+                start = -1;
+            }
+        }
+        return new TokenisedCommand(ids, this);
+    }
+
+    /**
+     * Splits text[start, end) on whitespace and looks every word up lowercased (see idOfLowerCase), in one pass
+     * and without creating a String per word
+     */
+    public TokenisedCommand tokeniseLowerCase(CharSequence text, int start, int end) {
+        int[] ids = new int[8];
+        int count = 0;
+        int wordStart = -1;
+        for (int i = start; i <= end; i++) {
+            boolean space = i == end || isWhitespace(text.charAt(i));
+            if (!space && wordStart < 0) {
+                wordStart = i;
+            } else if (space && wordStart >= 0) {
+                if (count == ids.length) { ids = Arrays.copyOf(ids, count * 2); }
+                ids[count++] = idOfLowerCase(text, wordStart, i);
+                wordStart = -1;
+            }
+        }
+        return new TokenisedCommand(ids, count, this);
+    }
+
+    /**
+     * Looks up words that have already been split
+     */
+    public TokenisedCommand tokenise(List<String> tokens) {
+        int[] ids = new int[tokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idOf(tokens.get(i));
+        }
+        return new TokenisedCommand(ids, this);
+    }
+
+    /**
+     * The characters matched by \s in a regular expression
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,21 @@
+package edu.uob.Entities;
+
+/**
+ * The view a session's player was last shown, for delta looks: each look through it only shows what has changed
+ * since the one before. It belongs to one session, so any other connection for the same player keeps getting
+ * full views. Only used by the thread answering that session.
+ */
+public final class DeltaLooks {
+    private LocationView lastSeen;
+
+    /**
+     * @param view what the player's location looks like now
+     * @param viewerName the player looking
+     * @return what has changed since the last look, or the full view if the last look can't be compared with it
+     */
+    public String show(LocationView view, String viewerName) {
+        String changes = view.renderChangesSince(lastSeen, viewerName);
+        lastSeen = view;
+        return changes != null ? changes : view.render(viewerName);
+    }
+}
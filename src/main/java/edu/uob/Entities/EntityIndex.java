@@ -0,0 +1,149 @@
+package edu.uob.Entities;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of every entity name in the game, with what kind of entity it is, for O(1) membership checks.
+ * World entities (locations and everything loaded into them) are indexed once from the entities file; their
+ * names never change however often they move.
+ * Players aren't world entities: commands treat a player's name as an ordinary word, as before, so only their
+ * inventories are indexed.
+ * The index also records where each entity currently is: a location (or the storeroom), or the player holding it.
+ * Locations report their own changes (see GameEntityLocation), so a container only changes while its lock is held.
+ * Every name is also given a small int ID for EntitySets; IDs are handed out on first use and never change,
+ * so locations, inventories and compiled actions can all share them.
+ * The paths between the locations are kept as a LocationGraph for route queries.
+ * Safe to read and update from any number of threads.
+ */
+public final class EntityIndex {
+    public enum Kind { LOCATION, ARTEFACT, FURNITURE, CHARACTER }
+
+    private final Map<String, Kind> worldEntities = new ConcurrentHashMap<>();
+    private final Map<String, GameEntity> containers = new ConcurrentHashMap<>();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<String, GameEntityLocation> locations;
+    private final LocationGraph graph;
+
+    /**
+     * Indexes every location and everything in it, including the storeroom and any players already in the world
+     */
+    public EntityIndex(Map<String, GameEntityLocation> locations) {
+        this(locations, null);
+    }
+
+    /**
+     * Indexes a forked world, handing out the same IDs as the index of the world it was forked from, so both
+     * worlds can share compiled actions
+     * @param parent the index of the world the locations were forked from, or null to start the IDs afresh
+     */
+    public EntityIndex(Map<String, GameEntityLocation> locations, EntityIndex parent) {
+        this.locations = locations;
+        if (parent != null) {
+            //IDs are numbered by how many there are, so the copy mustn't miss one the parent is handing out
+            synchronized (parent.ids) { ids.putAll(parent.ids); }
+        }
+        for (GameEntityLocation location : locations.values()) {
+            //the location reports itself and everything in it; a location counts as containing itself,
+            //so producing it finds somewhere to open a path from
+            location.attachIndex(this);
+            worldEntities.putIfAbsent(location.getName(), Kind.LOCATION);
+            location.getArtefacts().keySet().forEach(name -> worldEntities.putIfAbsent(name, Kind.ARTEFACT));
+            location.getFurniture().keySet().forEach(name -> worldEntities.putIfAbsent(name, Kind.FURNITURE));
+            location.getCharacters().forEach((name, character) -> {
+                if (character instanceof Player) { addPlayer((Player) character); } else { worldEntities.putIfAbsent(name, Kind.CHARACTER); }
+            });
+        }
+        graph = new LocationGraph(locations);
+    }
+
+    /**
+     * Called when a player joins the game; from then on their inventory reports what they pick up and put down
+     */
+    public void addPlayer(Player player) {
+        player.attachIndex(this);
+    }
+
+    /**
+     * @return the kind of the world entity with this name, or null if there is none (players included)
+     */
+    public Kind kindOf(String name) {
+        return worldEntities.get(name);
+    }
+
+    /**
+     * @return the names of all world entities, each once
+     */
+    public Set<String> getEntityNames() {
+        return Collections.unmodifiableSet(worldEntities.keySet());
+    }
+
+    /**
+     * @return the entity's ID, giving it the next one if it hasn't got one yet. Names that aren't entities can have
+     * IDs too (e.g. an action subject missing from the entities file); nothing ever holds them.
+     */
+    public int idFor(String name) {
+        Integer id = ids.get(name);
+        if (id != null) { return id; }
+        synchronized (ids) {
+            return ids.computeIfAbsent(name, key -> ids.size());
+        }
+    }
+
+    /**
+     * @return a new set of the IDs of the given names
+     */
+    public EntitySet setOf(Collection<String> names) {
+        EntitySet set = new EntitySet();
+        for (String name : names) { set.add(idFor(name)); }
+        return set;
+    }
+
+    /**
+     * Records that the entity is now in this location or player's inventory
+     */
+    public void placeIn(String name, GameEntity container) {
+        containers.put(name, container);
+    }
+
+    /**
+     * Records that the entity has left the container, unless it has already been placed somewhere else
+     */
+    public void removeFrom(String name, GameEntity container) {
+        containers.remove(name, container);
+    }
+
+    /**
+     * @return the location or player holding the entity, or null if it is nowhere
+     */
+    public GameEntity containerOf(String name) {
+        return containers.get(name);
+    }
+
+    /**
+     * @return the location called name, or null if there's no such location
+     */
+    public GameEntityLocation getLocation(String name) {
+        return locations.get(name);
+    }
+
+    public LocationGraph getLocationGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the player with the entity in their inventory, or null if nobody is holding it
+     */
+    public Player holderOf(String name) {
+        GameEntity container = containers.get(name);
+        return container instanceof Player ? (Player) container : null;
+    }
+
+    /**
+     * @return the location (possibly the storeroom) the entity is in, or null if it's in an inventory or nowhere
+     */
+    public GameEntityLocation locationOf(String name) {
+        GameEntity container = containers.get(name);
+        return container instanceof GameEntityLocation ? (GameEntityLocation) container : null;
+    }
+}
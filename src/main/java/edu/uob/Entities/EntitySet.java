@@ -0,0 +1,50 @@
+package edu.uob.Entities;
+
+import java.util.Arrays;
+
+/**
+ * A set of entities as a bitset over the IDs handed out by an EntityIndex, so checking that every entity of one
+ * set is in another is a word-wise AND over a few longs instead of a search per entity.
+ * Grows as needed; not thread safe, so a set belonging to a location or player is only used under its lock.
+ */
+public final class EntitySet {
+    private long[] words = new long[1];
+
+    public void add(int id) {
+        int word = id >>> 6;
+        if (word >= words.length) { words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2)); }
+        words[word] |= 1L << id;
+    }
+
+    public void remove(int id) {
+        int word = id >>> 6;
+        if (word < words.length) { words[word] &= ~(1L << id); }
+    }
+
+    public boolean contains(int id) {
+        int word = id >>> 6;
+        return word < words.length && (words[word] & (1L << id)) != 0;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if every entity in this set is in either of the other two
+     */
+    public boolean coveredBy(EntitySet first, EntitySet second) {
+        for (int i = 0; i < words.length; i++) {
+            long available = wordAt(first, i) | wordAt(second, i);
+            if ((words[i] & ~available) != 0) { return false; }
+        }
+        return true;
+    }
+
+    private static long wordAt(EntitySet set, int i) {
+        return i < set.words.length ? set.words[i] : 0;
+    }
+}
@@ -3,18 +3,166 @@ package edu.uob.Entities;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class GameEntityLocation extends GameEntity {
     private List<String> locationPaths;
     private HashMap<String, GameEntityArtefact> artefactHashMap;
     private HashMap<String, GameEntityFurniture> furnitureHashMap;
     private HashMap<String, GameEntityCharacter> characterHashMap;
+    /**
+     * guards the entity maps and paths of this location; see LocationLocks for the ordering rules
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * told about every entity that arrives or leaves, once the location has been indexed
+     */
+    private EntityIndex index;
+    /**
+     * IDs of this location and everything in it, kept in step with the maps once the location has been indexed
+     */
+    private final EntitySet presence = new EntitySet();
+    /**
+     * bumped by every change to the entity maps or paths, so a cached view can tell whether it's still current.
+     * Only changed while the lock is held; volatile, with view, so the current view can be read without it
+     */
+    private volatile long version;
+    private volatile LocationView view;
+    /**
+     * told about every path opened or closed, once the location is part of a LocationGraph
+     */
+    private LocationGraph graph;
+    /**
+     * set while the entity maps and paths are shared with a fork of this location or the location it was forked
+     * from; whichever of them changes first takes its own copies, so neither ever writes to shared maps
+     */
+    private boolean sharedContents = false;
+    /**
+     * counts the changes other than players coming and going, which forks and merges don't care about
+     */
+    private long contentsVersion;
+    /**
+     * the contents version of the location this one was forked from when the fork was made, -1 if it isn't a fork
+     */
+    private final long forkedAtVersion;
     public GameEntityLocation(String name, String description) {
         super(name, description);
         artefactHashMap = new HashMap<>();
         furnitureHashMap = new HashMap<>();
         characterHashMap = new HashMap<>();
         locationPaths = new ArrayList<>();
+        forkedAtVersion = -1;
+    }
+
+    private GameEntityLocation(GameEntityLocation parent) {
+        super(parent.getName(), parent.getDescription());
+        artefactHashMap = parent.artefactHashMap;
+        furnitureHashMap = parent.furnitureHashMap;
+        characterHashMap = parent.characterHashMap;
+        locationPaths = parent.locationPaths;
+        forkedAtVersion = parent.contentsVersion;
+    }
+
+    /**
+     * A location for a forked world, starting with the same contents and paths as this one and sharing them until
+     * either location changes. Players aren't part of the fork: they stay in this location's world.
+     * This location must be locked.
+     */
+    public GameEntityLocation fork() {
+        GameEntityLocation fork = new GameEntityLocation(this);
+        for (GameEntityCharacter character : characterHashMap.values()) {
+            if (character instanceof Player) {
+                fork.characterHashMap = new HashMap<>();
+                characterHashMap.forEach((name, other) -> {
+                    if (!(other instanceof Player)) { fork.characterHashMap.put(name, other); }
+                });
+                break;
+            }
+        }
+        sharedContents = true;
+        fork.sharedContents = true;
+        return fork;
+    }
+
+    /**
+     * @return true if this is a location of a forked world whose contents or paths have changed since the fork
+     */
+    public boolean changedSinceFork() {
+        return forkedAtVersion >= 0 && contentsVersion != 0;
+    }
+
+    /**
+     * @return the contents version the forked location had when this location was forked from it, -1 if this
+     * isn't a fork
+     */
+    public long getForkedAtVersion() { return forkedAtVersion; }
+
+    /**
+     * @return how many times the contents or paths have changed, not counting players coming and going; only
+     * valid while the location is locked
+     */
+    public long getContentsVersion() { return contentsVersion; }
+
+    /**
+     * Makes this location's contents the same as its fork's: entities and paths the fork hasn't got any more are
+     * removed and the ones it has gained are added, all reported as usual. Players here stay; the fork's don't come.
+     * Both locations must be locked.
+     */
+    public void mergeFrom(GameEntityLocation fork) {
+        for (String name : new ArrayList<>(artefactHashMap.keySet())) {
+            if (!fork.artefactHashMap.containsKey(name)) { removeArtefact(name); }
+        }
+        for (String name : new ArrayList<>(furnitureHashMap.keySet())) {
+            if (!fork.furnitureHashMap.containsKey(name)) {
+                ownContents();
+                changed(furnitureHashMap.remove(name));
+                removed(name);
+            }
+        }
+        for (Map.Entry<String, GameEntityCharacter> character : new ArrayList<>(characterHashMap.entrySet())) {
+            if (!(character.getValue() instanceof Player) && !fork.characterHashMap.containsKey(character.getKey())) {
+                removeCharacter(character.getKey());
+            }
+        }
+        fork.artefactHashMap.forEach((name, artefact) -> { if (!artefactHashMap.containsKey(name)) { addArtefact(artefact); } });
+        fork.furnitureHashMap.forEach((name, furniture) -> { if (!furnitureHashMap.containsKey(name)) { addFurniture(furniture); } });
+        fork.characterHashMap.forEach((name, character) -> {
+            if (!(character instanceof Player) && !characterHashMap.containsKey(name)) { addCharacter(character); }
+        });
+        for (String path : new ArrayList<>(locationPaths)) {
+            if (!fork.locationPaths.contains(path)) { removePath(path); }
+        }
+        for (String path : fork.locationPaths) {
+            if (!locationPaths.contains(path)) { addPath(path); }
+        }
+    }
+
+    /**
+     * Takes copies of the entity maps and paths if they are shared with a fork, before changing them
+     */
+    private void ownContents() {
+        if (!sharedContents) { return; }
+        artefactHashMap = new HashMap<>(artefactHashMap);
+        furnitureHashMap = new HashMap<>(furnitureHashMap);
+        characterHashMap = new HashMap<>(characterHashMap);
+        locationPaths = new ArrayList<>(locationPaths);
+        sharedContents = false;
+    }
+
+    /**
+     * A new location with the same contents and paths, sharing the entities themselves, which never change.
+     * Used to open another room from a world that has never been played, so it has no players to copy.
+     */
+    public GameEntityLocation copyAsLoaded() {
+        GameEntityLocation copy = new GameEntityLocation(getName(), getDescription());
+        copy.artefactHashMap.putAll(artefactHashMap);
+        copy.furnitureHashMap.putAll(furnitureHashMap);
+        characterHashMap.forEach((name, character) -> {
+            if (!(character instanceof Player)) { copy.characterHashMap.put(name, character); }
+        });
+        copy.locationPaths.addAll(locationPaths);
+        return copy;
     }
 
     /**
@@ -33,6 +181,59 @@ public class GameEntityLocation extends GameEntity {
 
     public ArrayList<String> getPaths() { return (ArrayList<String>) locationPaths; }
 
+    public ReentrantLock getLock() { return lock; }
+
+    /**
+     * @return the number of changes made to this location so far
+     */
+    public long getVersion() { return version; }
+
+    /**
+     * What a look shows here, rendered again only if the location has changed since it was last asked for.
+     * The location must be locked.
+     * @param locations every location, to describe where the paths lead
+     */
+    public LocationView getView(Map<String, GameEntityLocation> locations) {
+        LocationView current = view;
+        if (current == null || current.getVersion() != version) {
+            current = new LocationView(this, version, locations);
+            view = current;
+        }
+        return current;
+    }
+
+    /**
+     * The view published by the last look if nothing has changed here since, for reading without the lock.
+     * A writer holding the lock that hasn't changed anything yet is read around, as if the look came first.
+     * @return the current view, or null if it has to be rendered again under the lock with getView
+     */
+    public LocationView getPublishedView() {
+        LocationView current = view;
+        return current != null && current.getVersion() == version ? current : null;
+    }
+
+    void attachGraph(LocationGraph graph) {
+        this.graph = graph;
+    }
+
+    void attachIndex(EntityIndex index) {
+        this.index = index;
+        getEntitiesList().forEach(this::placed);
+    }
+
+    /**
+     * @return the entities in this location as a set of EntityIndex IDs, only valid while the location is locked
+     */
+    public EntitySet getPresence() { return presence; }
+
+    /**
+     * @return true if this is the location called name or it has an artefact, character or piece of furniture called name
+     */
+    public boolean containsEntity(String name) {
+        return getName().equals(name) || artefactHashMap.containsKey(name) || characterHashMap.containsKey(name)
+                || furnitureHashMap.containsKey(name);
+    }
+
     public ArrayList<String> getEntitiesList() {
         ArrayList<String> entities = new ArrayList<>();
         entities.add(getName());
@@ -46,14 +247,24 @@ public class GameEntityLocation extends GameEntity {
      * add artefact to the hashmap
      * @param artefact The artefact that belongs to the location
      */
-    public void addArtefact (GameEntityArtefact artefact){ this.artefactHashMap.put(artefact.getName(), artefact); }
+    public void addArtefact (GameEntityArtefact artefact){
+        ownContents();
+        this.artefactHashMap.put(artefact.getName(), artefact);
+        changed(artefact);
+        placed(artefact.getName());
+    }
 
 
     /**
      * add furniture to hashmap
      * @param furniture Furniture present in the location
      */
-    public void addFurniture (GameEntityFurniture furniture){ this.furnitureHashMap.put(furniture.getName(), furniture); }
+    public void addFurniture (GameEntityFurniture furniture){
+        ownContents();
+        this.furnitureHashMap.put(furniture.getName(), furniture);
+        changed(furniture);
+        placed(furniture.getName());
+    }
 
     /**
      * add character to hashmap
@@ -61,7 +272,85 @@ public class GameEntityLocation extends GameEntity {
      */
     public void addCharacter (GameEntityCharacter character){
         if (!getCharacters().containsKey(character.getName())) {
+            ownContents();
             this.characterHashMap.put(character.getName(), character);
+            changed(character);
+        }
+        placed(character.getName());
+    }
+
+    /**
+     * remove an artefact from the hashmap
+     * @return the artefact, or null if it isn't here
+     */
+    public GameEntityArtefact removeArtefact (String name){
+        if (!artefactHashMap.containsKey(name)) { return null; }
+        ownContents();
+        GameEntityArtefact artefact = artefactHashMap.remove(name);
+        if (artefact != null) {
+            changed(artefact);
+            removed(name);
+        }
+        return artefact;
+    }
+
+    /**
+     * remove a character from the hashmap
+     * @return the character, or null if they aren't here
+     */
+    public GameEntityCharacter removeCharacter (String name){
+        if (!characterHashMap.containsKey(name)) { return null; }
+        ownContents();
+        GameEntityCharacter character = characterHashMap.remove(name);
+        if (character != null) {
+            changed(character);
+            removed(name);
+        }
+        return character;
+    }
+
+    /**
+     * Moves the artefact, character or furniture called entity from here into the same kind of entity in destination.
+     * Both locations must be locked by the caller.
+     * @param entity name of the entity to move, nothing happens if it isn't here
+     * @param destination location the entity is moved to
+     */
+    public void transferEntity (String entity, GameEntityLocation destination){
+        if (getName().equals(entity) || !containsEntity(entity)) { return; }
+        ownContents();
+        destination.ownContents();
+        transferEntity(artefactHashMap, destination.artefactHashMap, entity, destination);
+        transferEntity(characterHashMap, destination.characterHashMap, entity, destination);
+        transferEntity(furnitureHashMap, destination.furnitureHashMap, entity, destination);
+    }
+
+    private <T> void transferEntity(Map<String, T> source, Map<String, T> destinationMap, String entity, GameEntityLocation destination) {
+        T item = source.remove(entity);
+        if (item != null) {
+            changed(item);
+            removed(entity);
+            destinationMap.put(entity, item);
+            destination.changed(item);
+            destination.placed(entity);
+        }
+    }
+
+    private void changed(Object what) {
+        version++;
+        if (!(what instanceof Player)) { contentsVersion++; }
+    }
+
+    private void placed(String name) {
+        if (index != null) {
+            index.placeIn(name, this);
+            presence.add(index.idFor(name));
+        }
+    }
+
+    private void removed(String name) {
+        if (index != null) {
+            index.removeFrom(name, this);
+            presence.remove(index.idFor(name));
         }
     }
 
@@ -69,7 +358,28 @@ public class GameEntityLocation extends GameEntity {
      * add path to list
      * @param path Path/location ID that player can go to from this location
      */
-    public void addPath (String path) { locationPaths.add(path); }
+    public void addPath (String path) {
+        ownContents();
+        locationPaths.add(path);
+        changed(path);
+        if (graph != null) { graph.pathOpened(getName(), path); }
+    }
+
+    /**
+     * remove a path from the list
+     * @param path Path/location ID that can no longer be reached from here
+     * @return true if there was such a path
+     */
+    public boolean removePath (String path) {
+        if (!locationPaths.contains(path)) { return false; }
+        ownContents();
+        boolean removed = locationPaths.remove(path);
+        if (removed) {
+            changed(path);
+            if (graph != null) { graph.pathClosed(getName(), path); }
+        }
+        return removed;
+    }
 
     /**
      * method used for the 'look' command,
@@ -0,0 +1,154 @@
+package edu.uob.Entities;
+
+import java.util.*;
+
+/**
+ * The paths between locations as compressed sparse rows over location IDs, for multi-hop route queries.
+ * The paths out of location i lead to targets[offsets[i]] up to targets[offsets[i] + degrees[i] - 1]. Every row
+ * is packed with a little slack after it, so opening a path only repacks the graph when its row is full;
+ * closing one moves the row's last target into its place.
+ * Routes come from breadth-first shortest-path trees, cached per starting location. A path change only drops
+ * the trees it can change: opening u->v drops the trees that reach v later than one step after u, and closing
+ * u->v drops the trees that reach v through u. Every other tree is still a shortest-path tree.
+ * Locations report their own path changes while their lock is held (see GameEntityLocation). The graph's lock
+ * is always the last one taken, so route queries don't need any location locks.
+ */
+public final class LocationGraph {
+    private static final int SLACK = 2;
+    private static final int CACHED_TREES = 64;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final String[] names;
+    private int[] offsets;
+    private final int[] degrees;
+    private int[] targets;
+    /**
+     * trees by starting location ID, least recently used first
+     */
+    private final LinkedHashMap<Integer, Tree> trees = new LinkedHashMap<>(16, 0.75f, true);
+    private long treesBuilt = 0;
+
+    private static final class Tree {
+        private final int[] distance;
+        private final int[] parent;
+
+        private Tree(int size) {
+            distance = new int[size];
+            parent = new int[size];
+        }
+    }
+
+    /**
+     * Builds the graph from every location's paths and from then on is told about every path opened or closed
+     */
+    public LocationGraph(Map<String, GameEntityLocation> locations) {
+        names = new TreeSet<>(locations.keySet()).toArray(new String[0]);
+        for (int i = 0; i < names.length; i++) { ids.put(names[i], i); }
+        degrees = new int[names.length];
+        int[][] rows = new int[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            GameEntityLocation location = locations.get(names[i]);
+            rows[i] = location.getPaths().stream().filter(ids::containsKey).mapToInt(ids::get).toArray();
+            degrees[i] = rows[i].length;
+            location.attachGraph(this);
+        }
+        pack(rows);
+    }
+
+    private void pack(int[][] rows) {
+        offsets = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) { offsets[i + 1] = offsets[i] + rows[i].length + SLACK; }
+        targets = new int[offsets[names.length]];
+        for (int i = 0; i < names.length; i++) { System.arraycopy(rows[i], 0, targets, offsets[i], degrees[i]); }
+    }
+
+    /**
+     * Called by a location when a path out of it is opened
+     */
+    synchronized void pathOpened(String from, String to) {
+        Integer u = ids.get(from);
+        Integer v = ids.get(to);
+        if (u == null || v == null) { return; }
+        if (offsets[u] + degrees[u] == offsets[u + 1]) {
+            int[][] rows = new int[names.length][];
+            for (int i = 0; i < names.length; i++) { rows[i] = Arrays.copyOfRange(targets, offsets[i], offsets[i] + degrees[i]); }
+            rows[u] = Arrays.copyOf(rows[u], degrees[u] + 1);
+            pack(rows);
+        }
+        targets[offsets[u] + degrees[u]++] = v;
+        trees.values().removeIf(tree -> tree.distance[u] >= 0 && (tree.distance[v] < 0 || tree.distance[u] + 1 < tree.distance[v]));
+    }
+
+    /**
+     * Called by a location when a path out of it is closed
+     */
+    synchronized void pathClosed(String from, String to) {
+        Integer u = ids.get(from);
+        Integer v = ids.get(to);
+        if (u == null || v == null) { return; }
+        for (int i = offsets[u]; i < offsets[u] + degrees[u]; i++) {
+            if (targets[i] == v) {
+                targets[i] = targets[offsets[u] + --degrees[u]];
+                trees.values().removeIf(tree -> tree.parent[v] == u);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the locations to go to one after another to get from one location to the other, ending with the
+     * destination; empty if they are the same and null if the destination can't be reached
+     * @throws IllegalArgumentException if either isn't a location
+     */
+    public synchronized List<String> route(String from, String to) {
+        Integer source = ids.get(from);
+        Integer destination = ids.get(to);
+        if (source == null || destination == null) { throw new IllegalArgumentException("Error: there is no location called " + (source == null ? from : to)); }
+        Tree tree = trees.get(source);
+        if (tree == null) { tree = search(source); }
+        if (tree.distance[destination] < 0) { return null; }
+        String[] steps = new String[tree.distance[destination]];
+        for (int at = destination, i = steps.length - 1; i >= 0; at = tree.parent[at], i--) { steps[i] = names[at]; }
+        return Arrays.asList(steps);
+    }
+
+    private Tree search(int source) {
+        Tree tree = new Tree(names.length);
+        Arrays.fill(tree.distance, -1);
+        Arrays.fill(tree.parent, -1);
+        int[] queue = new int[names.length];
+        int head = 0;
+        int tail = 0;
+        tree.distance[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int at = queue[head++];
+            for (int i = offsets[at]; i < offsets[at] + degrees[at]; i++) {
+                int next = targets[i];
+                if (tree.distance[next] < 0) {
+                    tree.distance[next] = tree.distance[at] + 1;
+                    tree.parent[next] = at;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        if (trees.size() == CACHED_TREES) { trees.remove(trees.keySet().iterator().next()); }
+        trees.put(source, tree);
+        treesBuilt++;
+        return tree;
+    }
+
+    /**
+     * @return how many shortest-path trees have been searched for so far, cached or not
+     */
+    public synchronized long getTreesBuilt() { return treesBuilt; }
+
+    /**
+     * @return the locations the paths out of the location lead to, in the order they are stored
+     */
+    public synchronized List<String> pathsFrom(String location) {
+        int u = ids.get(location);
+        List<String> paths = new ArrayList<>();
+        for (int i = offsets[u]; i < offsets[u] + degrees[u]; i++) { paths.add(names[targets[i]]); }
+        return paths;
+    }
+}
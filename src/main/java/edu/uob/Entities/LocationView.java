@@ -0,0 +1,139 @@
+package edu.uob.Entities;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a 'look' shows of one version of a location, rendered once and shared by every player looking until the
+ * location changes. The characters are kept one per line so each viewer can be left out of their own view
+ * without touching the location, and items, furniture and paths are kept one per line so two views of the same
+ * location can be compared for a delta look.
+ */
+public final class LocationView {
+    /**
+     * a delta look against a view more versions old than this gives the full view instead
+     */
+    public static final int HISTORY_VERSIONS = 64;
+    private final GameEntityLocation location;
+    private final long version;
+    private final String head;
+    private final String[] itemLines;
+    private final String[] furnitureLines;
+    private final String[] characterNames;
+    private final String[] characterLines;
+    private final String[] pathLines;
+    private final String paths;
+
+    /**
+     * @param location the location to render, which must be locked
+     * @param locations every location, to describe where the paths lead
+     */
+    LocationView(GameEntityLocation location, long version, Map<String, GameEntityLocation> locations) {
+        this.location = location;
+        this.version = version;
+        itemLines = linesOf(location.getArtefacts());
+        furnitureLines = linesOf(location.getFurniture());
+        StringBuilder builder = new StringBuilder();
+        builder.append("You are in a: ").append(location.getName()).append(", ").append(location.getDescription()).append("\n");
+        if (!location.getArtefacts().isEmpty()) {
+            builder.append("You see items:\n").append(location.entityToString(location.getArtefacts()));
+        }
+        if (!location.getFurniture().isEmpty()) {
+            builder.append("You see furniture:\n").append(location.entityToString(location.getFurniture()));
+        }
+        head = builder.toString();
+
+        characterNames = new String[location.getCharacters().size()];
+        characterLines = new String[characterNames.length];
+        int i = 0;
+        for (Map.Entry<String, GameEntityCharacter> character : location.getCharacters().entrySet()) {
+            characterNames[i] = character.getKey();
+            characterLines[i++] = character.getKey() + ", " + character.getValue().getDescription() + "\n";
+        }
+
+        pathLines = new String[location.getPaths().size()];
+        i = 0;
+        builder.setLength(0);
+        if (pathLines.length > 0) { builder.append("The paths available to you are:\n"); }
+        for (String path : location.getPaths()) {
+            GameEntityLocation pathLocation = locations.get(path);
+            pathLines[i] = pathLocation.getName() + ", " + pathLocation.getDescription() + "\n";
+            builder.append(pathLines[i++]);
+        }
+        paths = builder.toString();
+    }
+
+    private static String[] linesOf(Map<String, ? extends GameEntity> entities) {
+        String[] lines = new String[entities.size()];
+        int i = 0;
+        for (Map.Entry<String, ? extends GameEntity> entity : entities.entrySet()) {
+            lines[i++] = entity.getKey() + ", " + entity.getValue().getDescription() + "\n";
+        }
+        return lines;
+    }
+
+    long getVersion() { return version; }
+
+    /**
+     * @param viewerName the player looking, who doesn't see themselves
+     * @return the look response for the viewer
+     */
+    public String render(String viewerName) {
+        int length = head.length() + paths.length();
+        boolean othersHere = false;
+        for (int i = 0; i < characterNames.length; i++) {
+            if (!characterNames[i].equals(viewerName)) {
+                length += characterLines[i].length();
+                othersHere = true;
+            }
+        }
+        if (!othersHere) { return head.concat(paths); }
+
+        StringBuilder builder = new StringBuilder(length + 20);
+        builder.append(head).append("You see characters:\n");
+        for (int i = 0; i < characterNames.length; i++) {
+            if (!characterNames[i].equals(viewerName)) { builder.append(characterLines[i]); }
+        }
+        return builder.append(paths).toString();
+    }
+
+    /**
+     * What has changed since the viewer last looked: items and furniture added or removed, characters arriving
+     * or leaving and paths opened or closed.
+     * @param seen the view the viewer last saw, or null if they haven't looked since delta looks were turned on
+     * @param viewerName the player looking, who doesn't see themselves come and go
+     * @return the changes, or null if seen is of another location or too old, and the full view should be sent
+     */
+    public String renderChangesSince(LocationView seen, String viewerName) {
+        if (seen == null || seen.location != location || version - seen.version > HISTORY_VERSIONS) { return null; }
+        StringBuilder builder = new StringBuilder("You are still in: ").append(location.getName()).append("\n");
+        int unchanged = builder.length();
+        appendChanges(builder, "Items added:\n", itemLines, seen.itemLines, null, null);
+        appendChanges(builder, "Items removed:\n", seen.itemLines, itemLines, null, null);
+        appendChanges(builder, "Furniture added:\n", furnitureLines, seen.furnitureLines, null, null);
+        appendChanges(builder, "Furniture removed:\n", seen.furnitureLines, furnitureLines, null, null);
+        appendChanges(builder, "Characters arrived:\n", characterLines, seen.characterLines, characterNames, viewerName);
+        appendChanges(builder, "Characters left:\n", seen.characterLines, characterLines, seen.characterNames, viewerName);
+        appendChanges(builder, "Paths opened:\n", pathLines, seen.pathLines, null, null);
+        appendChanges(builder, "Paths closed:\n", seen.pathLines, pathLines, null, null);
+        if (builder.length() == unchanged) { builder.append("Nothing has changed since you last looked\n"); }
+        return builder.toString();
+    }
+
+    /**
+     * Appends the heading and every line of now that isn't in before, leaving out the viewer's own line
+     */
+    private static void appendChanges(StringBuilder builder, String heading, String[] now, String[] before,
+                                      String[] names, String viewerName) {
+        if (now.length == 0) { return; }
+        Set<String> previous = new HashSet<>(Arrays.asList(before));
+        int start = builder.length();
+        for (int i = 0; i < now.length; i++) {
+            if (previous.contains(now[i]) || (names != null && names[i].equals(viewerName))) { continue; }
+            if (builder.length() == start) { builder.append(heading); }
+            builder.append(now[i]);
+        }
+    }
+}
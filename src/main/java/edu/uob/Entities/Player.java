@@ -1,26 +1,76 @@
 package edu.uob.Entities;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Player extends GameEntityCharacter{
-    private HashMap<String, GameEntityArtefact> playerInventory;
-    private String playerLocation;
+    /**
+     * concurrent so that other players' actions can check what this player is holding without taking its lock
+     */
+    private final Map<String, GameEntityArtefact> playerInventory;
+    private volatile String playerLocation;
     private int health = 3;
     private final String startingLocation;
+    /**
+     * held for the whole of each of this player's commands, before any location lock is taken
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * told about everything picked up or put down once the player has joined the game
+     */
+    private EntityIndex index;
+    /**
+     * IDs of everything in the inventory, kept in step with it once the player has joined
+     */
+    private final EntitySet inventoryPresence = new EntitySet();
+    /**
+     * Only changed while the lock is held; volatile, with view, so the current view can be read without it
+     */
+    private volatile long version;
+    private volatile PlayerView view;
 
     public Player(String name, String description, String startingLocation) {
         super(name, description);
         this.startingLocation = startingLocation;
-        playerInventory = new HashMap<>();
+        playerInventory = new ConcurrentHashMap<>();
+    }
+
+    void attachIndex(EntityIndex index) {
+        this.index = index;
+        playerInventory.keySet().forEach(this::picked);
     }
 
     public void addItemToInventory(GameEntityArtefact entity) {
         playerInventory.put(entity.getName(), entity);
+        picked(entity.getName());
+        version++;
     }
 
     public void removeItemFromInventory(String entityName){
-        playerInventory.remove(entityName);
+        if (playerInventory.remove(entityName) != null) {
+            dropped(entityName);
+            version++;
+        }
+    }
+
+    /**
+     * @return the inventory as a set of EntityIndex IDs, only valid while the player is locked
+     */
+    public EntitySet getInventoryPresence() { return inventoryPresence; }
+
+    private void picked(String name) {
+        if (index != null) {
+            index.placeIn(name, this);
+            inventoryPresence.add(index.idFor(name));
+        }
+    }
+
+    private void dropped(String name) {
+        if (index != null) {
+            index.removeFrom(name, this);
+            inventoryPresence.remove(index.idFor(name));
+        }
     }
 
     public GameEntityArtefact getItemFromInventory(String itemName){
@@ -31,24 +81,68 @@ public class Player extends GameEntityCharacter{
         return playerInventory.containsKey(entityName);
     }
 
-    public HashMap<String, GameEntityArtefact> getPlayerInventory(){ return playerInventory; }
+    public Map<String, GameEntityArtefact> getPlayerInventory(){ return playerInventory; }
+
+    public ReentrantLock getLock() { return lock; }
 
-    public void setLocation(String location){ playerLocation = location; }
+    public void setLocation(String location){
+        playerLocation = location;
+        version++;
+    }
 
     public String getLocation(){ return playerLocation; }
 
+    public String getStartingLocation(){ return startingLocation; }
+
     public int getHealth() {
         return health;
     }
 
-    public void reduceHealth() { health--; }
+    public void reduceHealth() {
+        health--;
+        version++;
+    }
+
+    public void increaseHealth(){
+        if (health < 3) {
+            health++;
+            version++;
+        }
+    }
+
+    /**
+     * What the read-only commands see of the player, copied again only if the player has changed since it was
+     * last asked for. The player must be locked.
+     */
+    public PlayerView getView() {
+        PlayerView current = view;
+        if (current == null || current.getVersion() != version) {
+            current = new PlayerView(this, version);
+            view = current;
+        }
+        return current;
+    }
 
-    public void increaseHealth(){ if (health < 3) { health++; } }
+    /**
+     * The view published under the lock if nothing has changed since, for reading without the lock.
+     * A command holding the lock that hasn't changed anything yet is read around, as if the read came first.
+     * @return the current view, or null if it has to be copied again under the lock with getView
+     */
+    public PlayerView getPublishedView() {
+        PlayerView current = view;
+        return current != null && current.getVersion() == version ? current : null;
+    }
 
+    /**
+     * Restores health, empties the inventory and sends the player back to the starting location.
+     * The caller moves the player's character between the locations' maps.
+     */
     public void resetPlayer(){
         health = 3;
         setLocation(startingLocation);
+        playerInventory.keySet().forEach(this::dropped);
         playerInventory.clear();
+        version++;
     }
 
 }
@@ -0,0 +1,46 @@
+package edu.uob.Entities;
+
+/**
+ * What the read-only commands (look, inv, health, route) see of one version of a player: where they are, their
+ * health and their inventory, copied once under the player's lock and shared until the player changes.
+ */
+public final class PlayerView {
+    private final String name;
+    private final long version;
+    private final String location;
+    private final int health;
+    private final String[] inventoryLines;
+
+    /**
+     * @param player the player to copy, which must be locked
+     */
+    PlayerView(Player player, long version) {
+        this.name = player.getName();
+        this.version = version;
+        this.location = player.getLocation();
+        this.health = player.getHealth();
+        inventoryLines = new String[player.getPlayerInventory().size()];
+        int i = 0;
+        for (GameEntityArtefact artefact : player.getPlayerInventory().values()) {
+            inventoryLines[i++] = artefact.getName() + ", " + artefact.getDescription() + "\n";
+        }
+    }
+
+    public String getName() { return name; }
+
+    /**
+     * @return the version of the player this view was copied from
+     */
+    public long getVersion() { return version; }
+
+    public String getLocation() { return location; }
+
+    public int getHealth() { return health; }
+
+    public boolean isInventoryEmpty() { return inventoryLines.length == 0; }
+
+    /**
+     * @return one "name, description" line per artefact held, in the order the inventory lists them
+     */
+    public String getInventory() { return String.join("", inventoryLines); }
+}
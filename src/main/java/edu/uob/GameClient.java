@@ -2,10 +2,14 @@ package edu.uob;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public final class GameClient {
@@ -13,7 +17,15 @@ public final class GameClient {
     private static final char END_OF_TRANSMISSION = 4;
 
     public static void main(String[] args) throws IOException {
+        if (args[0].equals("--batch")) {
+            runBatch(args.length > 1 ? new BufferedReader(new FileReader(args[1])) : new BufferedReader(new InputStreamReader(System.in)));
+            return;
+        }
         String username = args[0];
+        if (args.length > 1 && args[1].equals("--session")) {
+            runSession(username);
+            return;
+        }
         while (!Thread.interrupted()) handleNextCommand(username);
     }
 
@@ -26,14 +38,96 @@ public final class GameClient {
         var socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
             socketWriter.write(username + ": " + command + "\n");
             socketWriter.flush();
-            String incomingMessage = socketReader.readLine();
-            if (incomingMessage == null) {
-                throw new IOException("Server disconnected (end-of-stream)");
+            printResponse(socketReader);
+        }
+    }
+
+    /**
+     * Keeps one connection open for the whole game: the player is named once in the handshake
+     * and every command after that is sent without the "name:" prefix.
+     * @param username the player to bind the session to
+     * @throws IOException if the server cannot be reached or disconnects
+     */
+    private static void runSession(String username) throws IOException {
+        BufferedReader commandLine = new BufferedReader(new InputStreamReader(System.in));
+        try (var socket = new Socket("localhost", 8888);
+        var socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        var socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            socketWriter.write(GameSession.SESSION_HANDSHAKE + username + "\n");
+            socketWriter.flush();
+            printResponse(socketReader);
+            while (!Thread.interrupted()) {
+                System.out.print(username + ":> ");
+                String command = commandLine.readLine();
+                if (command == null) { return; }
+                socketWriter.write(command + "\n");
+                socketWriter.flush();
+                printResponse(socketReader);
+            }
+        }
+    }
+
+    /**
+     * Sends every "player: command" line from the input down one pipelined connection without waiting
+     * for replies, then prints each response in the order the commands were sent.
+     * Lines are written from a separate thread so a long batch can't fill both socket buffers and stall.
+     * @param commands source of "player: command" lines, e.g. a script file or stdin
+     * @throws IOException if the input can't be read or the server disconnects
+     */
+    private static void runBatch(BufferedReader commands) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (commands) {
+            String line;
+            while ((line = commands.readLine()) != null) {
+                if (!line.isBlank()) { lines.add(line); }
             }
-            while (incomingMessage != null && !incomingMessage.contains("" + END_OF_TRANSMISSION + "")) {
-                System.out.println(incomingMessage);
-                incomingMessage = socketReader.readLine();
+        }
+        try (var socket = new Socket("localhost", 8888);
+        var socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        var socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            Thread sender = new Thread(() -> {
+                try {
+                    socketWriter.write(GameSession.PIPELINE_HANDSHAKE + "\n");
+                    for (String line : lines) {
+                        socketWriter.write(line + "\n");
+                    }
+                    socketWriter.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            sender.start();
+            readResponse(socketReader);
+            for (String line : lines) {
+                System.out.println("> " + line);
+                printResponse(socketReader);
             }
+            sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints the server's response up to the END_OF_TRANSMISSION line
+     */
+    private static void printResponse(BufferedReader socketReader) throws IOException {
+        System.out.print(readResponse(socketReader));
+    }
+
+    /**
+     * Reads the server's response up to the END_OF_TRANSMISSION line
+     */
+    private static String readResponse(BufferedReader socketReader) throws IOException {
+        String incomingMessage = socketReader.readLine();
+        if (incomingMessage == null) {
+            throw new IOException("Server disconnected (end-of-stream)");
+        }
+        StringBuilder response = new StringBuilder();
+        while (incomingMessage != null && !incomingMessage.contains("" + END_OF_TRANSMISSION + "")) {
+            response.append(incomingMessage).append("\n");
+            incomingMessage = socketReader.readLine();
         }
+        return response.toString();
     }
 }
@@ -0,0 +1,259 @@
+package edu.uob;
+
+import edu.uob.Actions.GameAction;
+import edu.uob.Entities.GameEntityLocation;
+import edu.uob.Entities.Player;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hosts any number of independent game rooms in one process, all playing the world of the host GameServer.
+ * The host is the default room; a session started with "#session name@room" plays in the named room, which is
+ * opened when the first session joins it and closed, discarding its world, when the last one leaves, so rooms
+ * nobody is playing in don't hold on to memory or to one of the maxRooms places. Every room is a copy of a prototype world loaded once from the host's
+ * files and never played, sharing its actions, entities and descriptions, and counting its commands into the
+ * host's metrics, so a room only costs the state that is actually its own.
+ * A room can also be opened as a fork of the host's live world (see GameServer.fork), for instanced content such
+ * as a party's private run, with the "#fork" admin command (see GameSession). A fork stays open without
+ * sessions until it is merged back into the host or closed with "#merge" or "#close", which only act on a fork
+ * nobody is playing in, so no session is left in a world nobody else can reach. Forks are capped at maxForks,
+ * well below maxRooms, since each one locks every location of the host while it is copied.
+ * The memory each room holds is estimated from how many locations, entities, actions and players it has; the
+ * constants are the sizes measured by RoomFootprintBenchmark on a 64-bit JVM with compressed pointers.
+ */
+final class GameRooms {
+
+    static final char ROOM_SEPARATOR = '@';
+    static final int DEFAULT_MAX_ROOMS = 100_000;
+    static final int DEFAULT_MAX_FORKS = 16;
+    private static final int MAX_ROOM_NAME_LENGTH = 32;
+    private static final long BYTES_PER_ROOM = 3_200;
+    private static final long BYTES_PER_LOCATION = 600;
+    private static final long BYTES_PER_ENTITY = 150;
+    private static final long BYTES_PER_ACTION = 850;
+    private static final long BYTES_PER_PLAYER = 350;
+    private final GameServer host;
+    private final GameServer prototype;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final int maxRooms;
+    private final int maxForks;
+    /**
+     * how many of the open rooms are forks; guarded by the rooms map's monitor
+     */
+    private int forks = 0;
+
+    /**
+     * An open room, with how many sessions are playing in it and whether it is being merged; both are guarded by
+     * the rooms map's monitor
+     */
+    private static final class Room {
+        private final GameServer server;
+        private final boolean forked;
+        private int sessions = 0;
+        private boolean merging = false;
+
+        private Room(GameServer server, boolean forked) {
+            this.server = server;
+            this.forked = forked;
+        }
+    }
+
+    GameRooms(GameServer host, GameServer prototype) {
+        this(host, prototype, DEFAULT_MAX_ROOMS, DEFAULT_MAX_FORKS);
+    }
+
+    GameRooms(GameServer host, GameServer prototype, int maxRooms) {
+        this(host, prototype, maxRooms, DEFAULT_MAX_FORKS);
+    }
+
+    /**
+     * @param host the server hosting the rooms, which is also the default room
+     * @param prototype a server loaded from the same files as the host that is never played
+     * @param maxRooms how many rooms may be open at once, not counting the host
+     * @param maxForks how many of those rooms may be forks
+     */
+    GameRooms(GameServer host, GameServer prototype, int maxRooms, int maxForks) {
+        this.host = host;
+        this.prototype = prototype;
+        this.maxRooms = maxRooms;
+        this.maxForks = maxForks;
+    }
+
+    /**
+     * @return the open room with this name, or null if there is none
+     */
+    GameServer getRoom(String name) {
+        Room room = rooms.get(name);
+        return room == null ? null : room.server;
+    }
+
+    /**
+     * Adds a session to a room; every call must be followed by leaveRoom once the session is over
+     * @param name the room's name: letters and digits only
+     * @return the room, opened now if no session is playing in it
+     * @throws IllegalArgumentException if the name is invalid, the room is being merged or no more rooms can be
+     * opened
+     */
+    GameServer joinRoom(String name) {
+        if (!isValidRoomName(name)) { throw new IllegalArgumentException("Error: " + name + " is an invalid room name!"); }
+        synchronized (rooms) {
+            Room room = rooms.get(name);
+            if (room == null) {
+                if (rooms.size() >= maxRooms) { throw new IllegalArgumentException("Error: no more rooms can be opened, please try again later"); }
+                room = new Room(new GameServer(prototype, host.getMetrics()), false);
+                rooms.put(name, room);
+            }
+            if (room.merging) { throw new IllegalArgumentException("Error: room " + name + " is being merged"); }
+            room.sessions++;
+            return room.server;
+        }
+    }
+
+    /**
+     * Takes a session that joined the room out of it, closing the room if it was the last one and the room isn't
+     * a fork
+     * @param server the room the session joined, which may since have been merged or closed
+     */
+    void leaveRoom(String name, GameServer server) {
+        synchronized (rooms) {
+            Room room = rooms.get(name);
+            if (room == null || room.server != server) { return; }
+            room.sessions--;
+            if (room.sessions == 0 && !room.forked) { rooms.remove(name); }
+        }
+    }
+
+    /**
+     * Opens a room that plays a fork of the host's world as it is now
+     * @param name the room's name: letters and digits only
+     * @param startingLocation where players joining the room start, null for the host's starting location
+     * @throws IllegalArgumentException if the name is invalid or taken, no more rooms or forks can be opened or
+     * there is no such location
+     */
+    GameServer openFork(String name, String startingLocation) {
+        if (!isValidRoomName(name)) { throw new IllegalArgumentException("Error: " + name + " is an invalid room name!"); }
+        synchronized (rooms) {
+            if (rooms.containsKey(name)) { throw new IllegalArgumentException("Error: there is already a room called " + name); }
+            if (rooms.size() >= maxRooms) { throw new IllegalArgumentException("Error: no more rooms can be opened, please try again later"); }
+            if (forks >= maxForks) { throw new IllegalArgumentException("Error: no more forks can be opened, merge or close one first"); }
+            GameServer fork = host.fork(startingLocation);
+            rooms.put(name, new Room(fork, true));
+            forks++;
+            return fork;
+        }
+    }
+
+    /**
+     * Merges a forked room's changes into the host's world and closes it. The room is marked as merging before
+     * the merge starts, so it can't be merged twice, closed or joined until the merge is over.
+     * @throws IllegalArgumentException if there is no such forked room, sessions are still playing in it, it is
+     * already being merged or the merge conflicts, in which case the room stays open
+     */
+    void mergeRoom(String name) {
+        Room room;
+        synchronized (rooms) {
+            room = emptyFork(name);
+            room.merging = true;
+        }
+        boolean merged = false;
+        try {
+            host.merge(room.server);
+            merged = true;
+        } finally {
+            synchronized (rooms) {
+                room.merging = false;
+                if (merged) {
+                    rooms.remove(name);
+                    forks--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes a forked room, discarding its world
+     * @throws IllegalArgumentException if there is no such forked room, sessions are still playing in it or it is
+     * being merged
+     */
+    void closeRoom(String name) {
+        synchronized (rooms) {
+            rooms.remove(name, emptyFork(name));
+            forks--;
+        }
+    }
+
+    /**
+     * @return the forked room with this name; the caller must hold the rooms map's monitor
+     * @throws IllegalArgumentException if there is no such forked room, sessions are still playing in it or it is
+     * being merged
+     */
+    private Room emptyFork(String name) {
+        Room room = rooms.get(name);
+        if (room == null || !room.forked) { throw new IllegalArgumentException("Error: there is no forked room called " + name); }
+        if (room.sessions > 0) {
+            throw new IllegalArgumentException("Error: " + room.sessions + " session(s) are still playing in " + name);
+        }
+        if (room.merging) { throw new IllegalArgumentException("Error: room " + name + " is already being merged"); }
+        return room;
+    }
+
+    static boolean isValidRoomName(String name) {
+        if (name.isEmpty() || name.length() > MAX_ROOM_NAME_LENGTH) { return false; }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isLetterOrDigit(name.charAt(i))) { return false; }
+        }
+        return true;
+    }
+
+    int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * @return an estimate of the heap held by the room's own state, not counting what it shares with the others
+     */
+    static long estimatedBytes(GameServer room) {
+        long entities = 0;
+        for (GameEntityLocation location : room.gameLocations.values()) {
+            entities += location.getArtefacts().size() + location.getFurniture().size()
+                    + location.getCharacters().size() + location.getPaths().size();
+        }
+        for (Player player : room.players.values()) {
+            entities += player.getPlayerInventory().size();
+        }
+        Set<GameAction> actions = Collections.newSetFromMap(new IdentityHashMap<>());
+        room.gameActionMap.values().forEach(actions::addAll);
+        return BYTES_PER_ROOM + BYTES_PER_LOCATION * room.gameLocations.size() + BYTES_PER_ENTITY * entities
+                + BYTES_PER_ACTION * actions.size() + BYTES_PER_PLAYER * room.players.size();
+    }
+
+    /**
+     * @return one row per room, largest first, with its players and estimated memory, then the totals
+     */
+    String getReport() {
+        List<Map.Entry<String, GameServer>> open = new ArrayList<>();
+        rooms.forEach((name, room) -> open.add(Map.entry(name, room.server)));
+        Map<GameServer, Long> bytes = new IdentityHashMap<>();
+        open.forEach(room -> bytes.put(room.getValue(), estimatedBytes(room.getValue())));
+        open.sort(Comparator.comparing((Map.Entry<String, GameServer> room) -> bytes.get(room.getValue())).reversed()
+                .thenComparing(Map.Entry::getKey));
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-32s %8s %12s%n", "room", "players", "est. KB"));
+        long totalBytes = estimatedBytes(host);
+        int totalPlayers = host.players.size();
+        appendRow(builder, "(default)", host.players.size(), totalBytes);
+        for (Map.Entry<String, GameServer> room : open) {
+            long roomBytes = bytes.get(room.getValue());
+            appendRow(builder, room.getKey(), room.getValue().players.size(), roomBytes);
+            totalBytes += roomBytes;
+            totalPlayers += room.getValue().players.size();
+        }
+        appendRow(builder, "total (" + (open.size() + 1) + " rooms)", totalPlayers, totalBytes);
+        return builder.toString();
+    }
+
+    private static void appendRow(StringBuilder builder, String room, int players, long bytes) {
+        builder.append(String.format("%-32s %8d %12.1f%n", room, players, bytes / 1024.0));
+    }
+}
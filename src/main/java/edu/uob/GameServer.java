@@ -1,12 +1,13 @@
 package edu.uob;
 
 import java.io.*;
-import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -16,9 +17,15 @@ import com.alexmerz.graphviz.*;
 import com.alexmerz.graphviz.objects.Edge;
 import com.alexmerz.graphviz.objects.Graph;
 import com.alexmerz.graphviz.objects.Node;
+import edu.uob.Actions.AdvancedCommandHandler;
 import edu.uob.Actions.GameAction;
 import edu.uob.Actions.GameCommandHandler;
+import edu.uob.Actions.LocationLocks;
 import edu.uob.Entities.*;
+import edu.uob.Logging.AsyncLogger;
+import edu.uob.Logging.LogLevel;
+import edu.uob.Metrics.CommandTimer;
+import edu.uob.Metrics.ServerMetrics;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -26,21 +33,54 @@ import org.xml.sax.SAXException;
 
 public final class GameServer {
 
-    private static final char END_OF_TRANSMISSION = 4;
+    static final char END_OF_TRANSMISSION = 4;
+    private static final int DEFAULT_MAX_SESSIONS = 10000;
+    private static final Duration SHUTDOWN_GRACE_PERIOD = Duration.ofSeconds(5);
+    private static final AsyncLogger LOG = AsyncLogger.getDefault();
+    /**
+     * the environment variable holding the token that unlocks the room admin commands; read from the environment
+     * rather than the command line so it doesn't show up in the process list
+     */
+    static final String ADMIN_TOKEN_VARIABLE = "GAME_ADMIN_TOKEN";
 
     public static void main(String[] args) throws IOException {
         File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
         File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
         GameServer server = new GameServer(entitiesFile, actionsFile);
-        server.blockingListenOn(8888);
+        server.getMetrics().registerMBeans();
+        server.setAdminToken(System.getenv(ADMIN_TOKEN_VARIABLE));
+        if (args.length > 0 && args[0].equals("--nio")) {
+            server.nonBlockingListenOn(8888);
+        } else if (args.length > 0 && args[0].equals("--threads")) {
+            int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_SESSIONS;
+            server.threadPerConnectionListenOn(8888, maxSessions);
+        } else {
+            server.blockingListenOn(8888);
+        }
     }
     public final HashMap<String, GameEntityLocation> gameLocations = new HashMap<>();
     private final List<String> reservedWords = Arrays.asList("inv", "goto", "inventory", "drop", "look");
-    public final HashMap<String, HashSet<GameAction>> gameActionMap = new HashMap<>();
-    public HashMap<String, Player> players = new HashMap<>();
+    public final HashMap<String, HashSet<GameAction>> gameActionMap;
+    public Map<String, Player> players = new ConcurrentHashMap<>();
     private String startingLocation = null;
     GameCommandHandler commandHandler;
-    List<String> allEntities;
+    private final ServerMetrics metrics;
+    final EntityIndex entityIndex;
+    /**
+     * the files this world was loaded from, for opening more rooms; null for a room
+     */
+    private final File entitiesFile;
+    private final File actionsFile;
+    private GameRooms rooms;
+    /**
+     * the token a connection must send with "#admin" before it can fork, merge or close rooms, null if no
+     * connection can
+     */
+    private volatile byte[] adminToken;
+    /**
+     * the world this one was forked from, null if it isn't a fork
+     */
+    private final GameServer parent;
 
     /**
     * Instantiates a new server instance, specifying a game with some configuration files
@@ -48,6 +88,10 @@ public final class GameServer {
     * @param actionsFile The game configuration file containing all game actions
     */
     public GameServer(File entitiesFile, File actionsFile) {
+        this.entitiesFile = entitiesFile;
+        this.actionsFile = actionsFile;
+        parent = null;
+        gameActionMap = new HashMap<>();
         try {
             getEntitiesFromFile(entitiesFile);
         } catch (IOException | IllegalArgumentException | ParseException e){
@@ -58,30 +102,229 @@ public final class GameServer {
         } catch (IOException | SAXException | ParserConfigurationException e){
             throw new RuntimeException(e);
         }
-        allEntities = new ArrayList<>();
-        commandHandler = new GameCommandHandler(gameLocations, gameActionMap, allEntities, players);
-        gameLocations.forEach((key, value) -> allEntities.addAll(value.getEntitiesList()));
+        entityIndex = new EntityIndex(gameLocations);
+        metrics = new ServerMetrics(gameActionMap.keySet());
+        commandHandler = new AdvancedCommandHandler(gameLocations, gameActionMap, entityIndex, players, metrics);
+    }
+
+    /**
+     * Opens a room: a world of its own, starting as the template's world was loaded.
+     * Everything that never changes is shared with the template (the actions, the entities themselves and their
+     * descriptions), so a room only holds the maps saying where things are, its index and its compiled actions.
+     * @param template a server loaded from files whose world has never been played
+     * @param metrics where the room's commands are counted, shared by all the rooms of a host
+     */
+    GameServer(GameServer template, ServerMetrics metrics) {
+        entitiesFile = null;
+        actionsFile = null;
+        parent = null;
+        gameActionMap = template.gameActionMap;
+        startingLocation = template.startingLocation;
+        for (GameEntityLocation location : template.gameLocations.values()) {
+            gameLocations.put(location.getName(), location.copyAsLoaded());
+        }
+        entityIndex = new EntityIndex(gameLocations);
+        this.metrics = metrics;
+        commandHandler = new AdvancedCommandHandler(gameLocations, gameActionMap, entityIndex, players, metrics);
+    }
+
+    private GameServer(GameServer parent, String startingLocation) {
+        entitiesFile = null;
+        actionsFile = null;
+        this.parent = parent;
+        gameActionMap = parent.gameActionMap;
+        this.startingLocation = startingLocation;
+        LocationLocks locks = LocationLocks.lock(parent.gameLocations.values());
+        try {
+            for (GameEntityLocation location : parent.gameLocations.values()) {
+                gameLocations.put(location.getName(), location.fork());
+            }
+        } finally {
+            locks.release();
+        }
+        entityIndex = new EntityIndex(gameLocations, parent.entityIndex);
+        metrics = parent.metrics;
+        commandHandler = new AdvancedCommandHandler(gameLocations, gameActionMap, entityIndex, players, metrics, parent.commandHandler.getDispatch());
+    }
+
+    /**
+     * Forks this world as it is now, for instanced content such as a party's private run through one part of it.
+     * The fork shares every location's contents with this world until either of them changes that location, so
+     * making it copies no entities; it shares the actions and their compiled dispatch, the entities and the metrics
+     * too, and only indexes its own locations. Players aren't forked: the
+     * fork starts with none and anyone playing it joins it as a new player.
+     * A fork is discarded by no longer playing it, or its changes are brought back with merge.
+     * @param startingLocation where players joining the fork start, null for this world's starting location
+     * @throws IllegalArgumentException if there is no such location
+     */
+    public GameServer fork(String startingLocation) {
+        if (startingLocation == null) { startingLocation = this.startingLocation; }
+        if (!gameLocations.containsKey(startingLocation)) { throw new IllegalArgumentException("Error: there is no location called " + startingLocation); }
+        return new GameServer(this, startingLocation);
+    }
+
+    /**
+     * @return true if this world was forked from the other one
+     */
+    boolean isForkOf(GameServer other) { return parent == other; }
+
+    /**
+     * Brings a fork's changes back into this world: every location the fork changed becomes as it is in the fork.
+     * Whatever the fork's players are holding is dropped where they stand. Players in this world keep their
+     * places and inventories. Nothing is merged, and nothing in either world changes, if any location the fork
+     * changed or is about to drop things in has changed here since the fork was made. Parent worlds are locked
+     * before their forks, so a fork of a fork can be merged at the same time.
+     * The fork shouldn't be played any more afterwards.
+     * @throws IllegalArgumentException if the fork isn't this world's or both changed the same location
+     */
+    public void merge(GameServer fork) {
+        if (!fork.isForkOf(this)) { throw new IllegalArgumentException("Error: that world wasn't forked from this one"); }
+        //commands only ever lock one player, so locking all of the fork's in name order can't deadlock
+        List<Player> forkPlayers = new ArrayList<>(fork.players.values());
+        forkPlayers.sort(Comparator.comparing(Player::getName));
+        forkPlayers.forEach(player -> player.getLock().lock());
+        try {
+            LocationLocks locks = LocationLocks.lock(gameLocations.values());
+            try {
+                LocationLocks forkLocks = LocationLocks.lock(fork.gameLocations.values());
+                try {
+                    mergeLocked(fork, forkPlayers);
+                } finally {
+                    forkLocks.release();
+                }
+            } finally {
+                locks.release();
+            }
+        } finally {
+            forkPlayers.forEach(player -> player.getLock().unlock());
+        }
+    }
+
+    /**
+     * Checks every location the merge would change for conflicts before changing anything; all the locations of
+     * both worlds and the fork's players must be locked
+     */
+    private void mergeLocked(GameServer fork, List<Player> forkPlayers) {
+        Set<String> dropLocations = new HashSet<>();
+        for (Player player : forkPlayers) {
+            if (!player.getPlayerInventory().isEmpty()) { dropLocations.add(player.getLocation()); }
+        }
+        List<GameEntityLocation> changed = new ArrayList<>();
+        for (GameEntityLocation forked : fork.gameLocations.values()) {
+            if (!forked.changedSinceFork() && !dropLocations.contains(forked.getName())) { continue; }
+            if (gameLocations.get(forked.getName()).getContentsVersion() != forked.getForkedAtVersion()) {
+                throw new IllegalArgumentException("Error: the " + forked.getName() + " has changed in both worlds since the fork");
+            }
+            changed.add(forked);
+        }
+        for (Player player : forkPlayers) {
+            GameEntityLocation location = fork.gameLocations.get(player.getLocation());
+            for (GameEntityArtefact artefact : new ArrayList<>(player.getPlayerInventory().values())) {
+                player.removeItemFromInventory(artefact.getName());
+                location.addArtefact(artefact);
+            }
+        }
+        for (GameEntityLocation forked : changed) {
+            gameLocations.get(forked.getName()).mergeFrom(forked);
+        }
+    }
+
+    /**
+     * @return the rooms hosted alongside this world, with this server as the default room
+     * @throws IllegalStateException if this server is itself a room
+     */
+    synchronized GameRooms getRooms() {
+        if (entitiesFile == null) { throw new IllegalStateException("A room or fork can't host other rooms"); }
+        if (rooms == null) { rooms = new GameRooms(this, new GameServer(entitiesFile, actionsFile)); }
+        return rooms;
     }
 
     /**
      * This method handles all incoming game commands and carries out the corresponding actions.
+     * It is safe to call from many threads at once; commands on different locations run in parallel.
+     * The line is parsed in place (see PlayerCommandLine); the only String made from it is the player's name.
      * @param command The incoming command to be processed
      */
     public String handleCommand(String command) {
-        if (!command.contains(":")) {return "Error: Invalid player name!";}
-        //server logic here
-        String[] inputParts = command.split(":", 2);
-        String playerName = inputParts[0].trim();
-        String playerCommand = inputParts[1].trim().toLowerCase();
+        CommandTimer timer = CommandTimer.current();
+        timer.begin(metrics.getUnknown());
+        boolean failed = true;
+        try {
+            PlayerCommandLine line = PlayerCommandLine.parse(command);
+            if (!line.hasSeparator()) {return "Error: Invalid player name!";}
+
+            try {
+                Player player = getPlayer(line);
+                String response = handleCommand(player, command, line.getCommandStart(), line.getCommandEnd(), null);
+                failed = false;
+                return response;
+            } catch (IllegalArgumentException e) {
+                return e.getMessage();
+            }
+        } finally {
+            timer.end(failed);
+        }
+    }
+
+    /**
+     * Handles a command for a player that has already been resolved, e.g. by a session handshake,
+     * so there is no "name:" prefix to parse.
+     * @param player The player issuing the command
+     * @param playerCommand The command without the player name
+     */
+    public String handleCommand(Player player, String playerCommand) {
+        return handleCommand(player, playerCommand, null);
+    }
+
+    /**
+     * As handleCommand(player, playerCommand), for a session that may have delta looks on
+     * @param looks The session's delta looks, or null for full looks
+     */
+    public String handleCommand(Player player, String playerCommand, DeltaLooks looks) {
+        int start = PlayerCommandLine.trimStart(playerCommand, 0, playerCommand.length());
+        return handleCommand(player, playerCommand, start, PlayerCommandLine.trimEnd(playerCommand, start, playerCommand.length()), looks);
+    }
 
+    /**
+     * Handles the trimmed command text[start, end), matching it as if it had been lowercased
+     */
+    private String handleCommand(Player player, CharSequence text, int start, int end, DeltaLooks looks) {
+        CommandTimer timer = CommandTimer.current();
+        timer.begin(metrics.getUnknown());
+        boolean failed = true;
         try {
-            Player player = getPlayer(playerName);
-            return commandHandler.handleCommand(playerCommand, player);
+            String response = commandHandler.handleCommand(text, start, end, player, looks);
+            failed = false;
+            return response;
         } catch (IllegalArgumentException e) {
             return e.getMessage();
+        } finally {
+            timer.end(failed);
         }
     }
 
+    /**
+     * @param token the token that unlocks the room admin commands (see GameSession), or null to keep them locked
+     */
+    void setAdminToken(String token) {
+        adminToken = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the token unlocks the room admin commands, compared in constant time
+     */
+    boolean isAdminToken(String token) {
+        byte[] expected = adminToken;
+        return expected != null && MessageDigest.isEqual(expected, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return latency histograms and hit/error counters for every command this server has handled
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Sets up a document builder to read the file and get a list of all possible actions in the game.
      * The actions are then passed to createGameAction so that all relevant info can be extracted
@@ -102,6 +345,8 @@ public final class GameServer {
         for (Element action : actions) {
             createGameAction(action);
         }
+        //actions loaded after construction replace the dispatch tables built from the earlier ones
+        if (commandHandler != null) { commandHandler.rebuildDispatch(); }
     }
 
     /**
@@ -284,22 +529,47 @@ public final class GameServer {
         return (reservedWords.contains(word.toLowerCase()));
     }
 
+    /**
+     * checkIfReservedWord for text[start, end), without copying it
+     */
+    private boolean checkIfReservedWord(CharSequence text, int start, int end) {
+        for (String reservedWord : reservedWords) {
+            if (reservedWord.length() == end - start && matchesIgnoringCase(text, start, reservedWord)) { return true; }
+        }
+        return false;
+    }
+
+    private static boolean matchesIgnoringCase(CharSequence text, int start, String lowerCaseWord) {
+        for (int i = 0; i < lowerCaseWord.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != lowerCaseWord.charAt(i)) { return false; }
+        }
+        return true;
+    }
+
     /**
      * This method is used to obtain the Player object of the client
      * @param playerName the player's name as specified in the command
      * @return the Player object mapped to the player's name after checking the name is valid
      */
     public Player getPlayer(String playerName) {
-        String regex = "[a-zA-Z\\s '-]+$";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(playerName);
+        return getPlayer(playerName, 0, playerName.length(), PlayerCommandLine.isValidName(playerName, 0, playerName.length()));
+    }
 
-        if (checkIfReservedWord(playerName)) {
+    /**
+     * getPlayer for the name in a parsed "name: command" line
+     */
+    private Player getPlayer(PlayerCommandLine line) {
+        return getPlayer(line.getLine(), line.getNameStart(), line.getNameEnd(), line.hasValidName());
+    }
+
+    private Player getPlayer(CharSequence text, int start, int end, boolean validName) {
+        if (checkIfReservedWord(text, start, end)) {
             throw new IllegalArgumentException("That player name is unavailable as it is a reserved word\n" +
                     "Please select a new name.");
         }
 
-        if (matcher.matches()) {
+        String playerName = text.subSequence(start, end).toString();
+        if (validName) {
             assignPlayer(playerName);
             return players.get(playerName);
         } else throw new IllegalArgumentException("Error: " + playerName + " is an invalid player name!");
@@ -308,55 +578,100 @@ public final class GameServer {
     /**
      * This method first checks if the player is a new one.
      * If so, it creates a new Player, placing them in the starting location and adding them to the hashmap of players
+     * The new player is locked until it is standing in the starting location, so a concurrent first command
+     * for the same name waits rather than seeing a player who isn't anywhere yet.
      *
      * @param playerName player name the client is using
      */
     public void assignPlayer(String playerName) {
         if (!players.containsKey(playerName)) {
             Player player = new Player(playerName, "A friendly player", startingLocation);
-            players.put(playerName, player);
-            player.setLocation(startingLocation);
-            gameLocations.get(startingLocation).addCharacter(player);
+            player.getLock().lock();
+            try {
+                if (players.putIfAbsent(playerName, player) != null) { return; }
+                entityIndex.addPlayer(player);
+                player.setLocation(startingLocation);
+                GameEntityLocation location = gameLocations.get(startingLocation);
+                location.getLock().lock();
+                try {
+                    location.addCharacter(player);
+                } finally {
+                    location.getLock().unlock();
+                }
+                //published before letting go, so the player's read-only commands never need the lock
+                player.getView();
+            } finally {
+                player.getLock().unlock();
+            }
         }
     }
 
     /**
     * Do not change the following method signature or we won't be able to mark your submission
     * Starts a *blocking* socket server listening for new connections.
+    * Every connection is served with blocking reads on its own thread, so a session waiting for its client's next
+    * line never holds up anybody else; at most DEFAULT_MAX_SESSIONS are served at once and any more are turned
+    * away (see ThreadPerConnectionListener).
     *
     * @param portNumber The port to listen on.
     * @throws IOException If any IO related operation fails.
     */
     public void blockingListenOn(int portNumber) throws IOException {
-        try (ServerSocket s = new ServerSocket(portNumber)) {
-            System.out.println("Server listening on port " + portNumber);
-            while (!Thread.interrupted()) {
-                try {
-                    blockingHandleConnection(s);
-                } catch (IOException e) {
-                    System.out.println("Connection closed");
-                }
-            }
-        }
+        new ThreadPerConnectionListener(this, DEFAULT_MAX_SESSIONS).listenOn(portNumber);
     }
 
     /**
-    * Handles an incoming connection from the socket server.
-    * @param serverSocket The client socket to read/write from.
-    * @throws IOException If any IO related operation fails.
-    */
-    private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
-        try (Socket s = serverSocket.accept();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
+     * Starts a selector based socket server that multiplexes all connections on a few worker threads,
+     * so one slow client no longer holds up everybody else. Uses the same framing as blockingListenOn.
+     *
+     * @param portNumber The port to listen on.
+     * @throws IOException If any IO related operation fails.
+     */
+    public void nonBlockingListenOn(int portNumber) throws IOException {
+        new NonBlockingListener(this, Runtime.getRuntime().availableProcessors()).listenOn(portNumber);
+    }
+
+    /**
+     * Starts a socket server that gives every connection its own thread, so blocking reads on one session
+     * don't hold up any other. On Java 21+ these are virtual threads, which makes tens of thousands of mostly
+     * idle sessions cheap; on older runtimes it falls back to a pool of platform threads.
+     * Stops accepting and closes the remaining sessions when the JVM shuts down.
+     *
+     * @param portNumber  The port to listen on.
+     * @param maxSessions The most connections served at once; any more are turned away with an error.
+     * @throws IOException If any IO related operation fails.
+     */
+    public void threadPerConnectionListenOn(int portNumber, int maxSessions) throws IOException {
+        ThreadPerConnectionListener listener = new ThreadPerConnectionListener(this, maxSessions);
+        Thread shutdownHook = new Thread(() -> listener.shutdown(SHUTDOWN_GRACE_PERIOD));
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        listener.listenOn(portNumber);
+    }
+
+    /**
+     * Reads lines from an accepted client socket and answers them until its GameSession is finished
+     * or the client disconnects. Shared by the blocking and thread-per-connection listeners.
+     * Logging goes through the asynchronous server log, so a slow console never holds up a request.
+     * A line longer than NonBlockingListener.MAX_LINE_LENGTH ends the connection, as in the non-blocking listener.
+     * @param s The connected client socket; closing it is left to the caller.
+     * @throws IOException If any IO related operation fails.
+     */
+    void serveConnection(Socket s) throws IOException {
+        try (LineReader reader = new LineReader(new InputStreamReader(s.getInputStream()), NonBlockingListener.MAX_LINE_LENGTH);
         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
-            System.out.println("Connection established");
-            String incomingCommand = reader.readLine();
-            if(incomingCommand != null) {
-                System.out.println("Received message from " + incomingCommand);
-                String result = handleCommand(incomingCommand);
-                writer.write(result);
-                writer.write("\n" + END_OF_TRANSMISSION + "\n");
-                writer.flush();
+            LOG.log(LogLevel.INFO, "connection_opened", String.valueOf(s.getRemoteSocketAddress()));
+            GameSession session = new GameSession(this, LOG);
+            try {
+                String incomingCommand;
+                while (session.isOpen() && (incomingCommand = reader.readLine()) != null) {
+                    writer.write(session.frame(session.respondTo(incomingCommand)));
+                    //pipelined commands that have already arrived in full are answered before flushing
+                    if (!reader.hasBufferedLine()) { writer.flush(); }
+                }
+            } catch (LineReader.LineTooLongException e) {
+                LOG.log(LogLevel.WARN, "line_too_long", String.valueOf(s.getRemoteSocketAddress()));
+            } finally {
+                session.close();
             }
         }
     }
@@ -0,0 +1,238 @@
+package edu.uob;
+
+import edu.uob.Entities.DeltaLooks;
+import edu.uob.Entities.Player;
+import edu.uob.Logging.AsyncLogger;
+import edu.uob.Logging.LogLevel;
+import edu.uob.Metrics.CommandTimer;
+
+/**
+ * The server side of one client connection.
+ * A connection that opens with "#session name" is bound to that player and can then send any number of
+ * bare commands (no "name:" prefix) until it disconnects. "#session name@room" does the same in one of the
+ * other rooms hosted by the server (see GameRooms), opening the room if it isn't open yet; the session leaves the
+ * room when the connection closes. A connection that opens with "#pipeline" can send
+ * any number of full "name: command" lines without waiting; they are answered one by one in the order they
+ * arrived. Any other first line is treated as an old style one-shot "name: command" request and the
+ * connection is finished once it has been answered.
+ * "#metrics" and "#rooms" are reserved for administration and answered with the server's command metrics and
+ * the memory held by each room at any point. So are "#fork room [location]", which opens a room playing a fork
+ * of the host's world as it is now, starting at the location if one is given, "#merge room", which merges a
+ * forked room back into the host's world and closes it, and "#close room", which closes a forked room and
+ * discards its world (see GameRooms). Those three change other players' worlds, so they are only answered on a
+ * connection that has sent "#admin token" with the server's admin token (see GameServer.ADMIN_TOKEN_VARIABLE);
+ * a wrong token closes the connection.
+ * Within a session "#delta-look on" makes every later look show only what has changed since the player's
+ * previous look in the session, and "#delta-look off" goes back to full looks. Other connections for the same player
+ * aren't affected, and delta looks end with the session.
+ * "#outcomes", sent on any connection before its other lines, makes every later response say whether its command
+ * failed: the END_OF_TRANSMISSION line then reads END_OF_TRANSMISSION + "ok" or + "error". Clients that read up
+ * to the line containing END_OF_TRANSMISSION aren't affected.
+ * Every line answered is logged with its player, latency and outcome through the asynchronous server log.
+ */
+final class GameSession {
+
+    static final String SESSION_HANDSHAKE = "#session ";
+    static final String PIPELINE_HANDSHAKE = "#pipeline";
+    static final String METRICS_COMMAND = "#metrics";
+    static final String ROOMS_COMMAND = "#rooms";
+    static final String FORK_COMMAND = "#fork ";
+    static final String MERGE_COMMAND = "#merge ";
+    static final String CLOSE_COMMAND = "#close ";
+    static final String ADMIN_HANDSHAKE = "#admin ";
+    static final String DELTA_LOOK_COMMAND = "#delta-look ";
+    static final String OUTCOMES_COMMAND = "#outcomes";
+    private final GameServer host;
+    /**
+     * the room the session plays in: the host until a session is started in another room
+     */
+    private GameServer server;
+    /**
+     * the name of the room the session joined, or null while it plays in the host
+     */
+    private String room;
+    private final AsyncLogger log;
+    private Player player;
+    private boolean pipelined = false;
+    private boolean open = true;
+    private boolean failed = false;
+    /**
+     * the session's delta looks, or null while looks are full
+     */
+    private DeltaLooks deltaLooks;
+    private boolean outcomes = false;
+    private boolean admin = false;
+
+    GameSession(GameServer server) {
+        this(server, AsyncLogger.getDefault());
+    }
+
+    GameSession(GameServer server, AsyncLogger log) {
+        this.host = server;
+        this.server = server;
+        this.log = log;
+    }
+
+    /**
+     * Handles one line received from the client
+     * @param line the line without its trailing newline
+     * @return the response to send back, not yet framed with END_OF_TRANSMISSION
+     */
+    String respondTo(String line) {
+        long start = System.nanoTime();
+        String response = respond(line);
+        if (log.isEnabled(LogLevel.INFO)) {
+            log.logCommand(LogLevel.INFO, playerNameFor(line), line, System.nanoTime() - start, failed ? "error" : "ok");
+        }
+        return response;
+    }
+
+    /**
+     * @return the session's player, or the name in front of the ':' of a full "name: command" line
+     */
+    private String playerNameFor(String line) {
+        if (player != null) { return player.getName(); }
+        int colon = line.indexOf(':');
+        return colon < 0 ? null : line.substring(0, colon).trim();
+    }
+
+    /**
+     * @param response the response to a line, as returned by respondTo
+     * @return the response framed for the client, with the outcome of its line if the client asked for outcomes
+     */
+    String frame(String response) {
+        String outcome = outcomes ? (failed ? "error" : "ok") : "";
+        return response + "\n" + GameServer.END_OF_TRANSMISSION + outcome + "\n";
+    }
+
+    private String respond(String line) {
+        failed = false;
+        if (line.trim().equals(OUTCOMES_COMMAND)) {
+            outcomes = true;
+            return "Outcomes on";
+        }
+        if (line.trim().equals(METRICS_COMMAND) || line.trim().equals(ROOMS_COMMAND)) {
+            //on its own an admin command is a one-shot request like any other
+            if (player == null && !pipelined) { open = false; }
+            return line.trim().equals(METRICS_COMMAND) ? host.getMetrics().getReport() : host.getRooms().getReport();
+        }
+        if (line.startsWith(ADMIN_HANDSHAKE)) {
+            if (host.isAdminToken(line.substring(ADMIN_HANDSHAKE.length()).trim())) {
+                admin = true;
+                return "Admin commands on";
+            }
+            open = false;
+            failed = true;
+            return "Error: wrong admin token";
+        }
+        if (line.startsWith(FORK_COMMAND) || line.startsWith(MERGE_COMMAND) || line.startsWith(CLOSE_COMMAND)) {
+            if (player == null && !pipelined) { open = false; }
+            return administerRoom(line);
+        }
+        if (line.startsWith(DELTA_LOOK_COMMAND)) {
+            return setDeltaLooks(line.substring(DELTA_LOOK_COMMAND.length()).trim());
+        }
+        if (player != null) {
+            return commandResult(server.handleCommand(player, line, deltaLooks));
+        }
+        if (pipelined) {
+            return commandResult(server.handleCommand(line));
+        }
+        if (line.startsWith(SESSION_HANDSHAKE)) {
+            return startSession(line.substring(SESSION_HANDSHAKE.length()).trim());
+        }
+        if (line.trim().equals(PIPELINE_HANDSHAKE)) {
+            pipelined = true;
+            return "Pipeline started";
+        }
+        open = false;
+        return commandResult(server.handleCommand(line));
+    }
+
+    /**
+     * Picks up whether the command the server just handled on this thread failed, for the log
+     */
+    private String commandResult(String response) {
+        failed = CommandTimer.current().lastCommandFailed();
+        return response;
+    }
+
+    private String startSession(String playerName) {
+        try {
+            int separator = playerName.lastIndexOf(GameRooms.ROOM_SEPARATOR);
+            if (separator >= 0) {
+                String roomName = playerName.substring(separator + 1).trim();
+                server = host.getRooms().joinRoom(roomName);
+                room = roomName;
+                playerName = playerName.substring(0, separator).trim();
+            }
+            player = server.getPlayer(playerName);
+            return "Session started for " + player.getName() + (room == null ? "" : " in room " + room);
+        } catch (IllegalArgumentException e) {
+            close();
+            open = false;
+            failed = true;
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Forks, merges or closes a room for a "#fork", "#merge" or "#close" line
+     */
+    private String administerRoom(String line) {
+        String[] words = line.trim().split("\\s+");
+        GameRooms rooms = host.getRooms();
+        try {
+            if (!admin) { throw new IllegalArgumentException("Error: " + words[0] + " is only answered after " + ADMIN_HANDSHAKE.trim()); }
+            if (line.startsWith(FORK_COMMAND) && (words.length == 2 || words.length == 3)) {
+                rooms.openFork(words[1], words.length == 3 ? words[2] : null);
+                return "Room " + words[1] + " forked";
+            }
+            if (line.startsWith(MERGE_COMMAND) && words.length == 2) {
+                rooms.mergeRoom(words[1]);
+                return "Room " + words[1] + " merged";
+            }
+            if (line.startsWith(CLOSE_COMMAND) && words.length == 2) {
+                rooms.closeRoom(words[1]);
+                return "Room " + words[1] + " closed";
+            }
+            throw new IllegalArgumentException("Error: " + words[0] + " takes a room name"
+                    + (line.startsWith(FORK_COMMAND) ? " and optionally a location" : ""));
+        } catch (IllegalArgumentException e) {
+            failed = true;
+            return e.getMessage();
+        }
+    }
+
+    private String setDeltaLooks(String setting) {
+        failed = true;
+        if (player == null) {
+            open = pipelined;
+            return "Error: delta looks are only available in a session";
+        }
+        if (!setting.equals("on") && !setting.equals("off")) {
+            return "Error: delta looks can only be turned on or off";
+        }
+        failed = false;
+        deltaLooks = setting.equals("on") ? new DeltaLooks() : null;
+        return "Delta looks " + setting;
+    }
+
+    /**
+     * Called once the connection has closed, so a room the session joined can be closed if nobody else plays in it
+     */
+    void close() {
+        if (room != null) {
+            host.getRooms().leaveRoom(room, server);
+            room = null;
+            server = host;
+        }
+    }
+
+    /**
+     * @return false once the connection should be closed after the last response has been written
+     */
+    boolean isOpen() {
+        return open;
+    }
+}
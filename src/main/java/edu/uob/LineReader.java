@@ -0,0 +1,100 @@
+package edu.uob;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads newline terminated lines like BufferedReader.readLine, but can also tell whether another whole line has
+ * already arrived, so a connection can answer a pipelined batch before flushing without waiting on a line that
+ * is still only partly there.
+ * As in NonBlockingListener, "\r\n" is accepted, a final unterminated line still counts and a line can't be
+ * longer than a limit, so a client can't make the server buffer an endless line.
+ */
+final class LineReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private final Reader in;
+    private final int maxLineLength;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int start = 0;
+    private int end = 0;
+
+    /**
+     * @param maxLineLength the most characters a line may have before its newline
+     */
+    LineReader(Reader in, int maxLineLength) {
+        this.in = in;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Thrown when a line goes on past the limit; the connection should be closed
+     */
+    static final class LineTooLongException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private LineTooLongException(int maxLineLength) {
+            super("line longer than " + maxLineLength + " characters");
+        }
+    }
+
+    /**
+     * @return the next line without its terminator, or null once the input has ended
+     * @throws LineTooLongException If more than maxLineLength characters arrive without a newline.
+     * @throws IOException If the underlying reader fails.
+     */
+    String readLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (; start + scanned < end; scanned++) {
+                if (buffer[start + scanned] == '\n') {
+                    int length = scanned;
+                    if (length > 0 && buffer[start + length - 1] == '\r') { length--; }
+                    String line = new String(buffer, start, length);
+                    start += scanned + 1;
+                    return line;
+                }
+            }
+            if (end - start >= maxLineLength) { throw new LineTooLongException(maxLineLength); }
+            if (!fill()) {
+                if (start == end) { return null; }
+                String line = new String(buffer, start, end - start);
+                start = end;
+                return line;
+            }
+        }
+    }
+
+    /**
+     * @return true if a whole line has already been read from the input, so readLine won't block
+     */
+    boolean hasBufferedLine() {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '\n') { return true; }
+        }
+        return false;
+    }
+
+    /**
+     * Reads more input after what is buffered, blocking until some arrives
+     * @return false if the input has ended
+     */
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) { buffer = Arrays.copyOf(buffer, buffer.length * 2); }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) { return false; }
+        end += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
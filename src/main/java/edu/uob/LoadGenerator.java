@@ -0,0 +1,263 @@
+package edu.uob;
+
+import edu.uob.Metrics.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Soak / load test client: runs a number of scripted bots against a running GameServer over the socket protocol.
+ * Each bot walks the extended-entities.dot map, picks things up and triggers actions from extended-actions.xml.
+ * Bots are started evenly over the ramp-up period and all stop once the duration has passed.
+ * Prints latency percentiles, throughput and error rate for every command type at the end. Every connection asks
+ * for outcomes (see GameSession), so a command counts as an error exactly when the server says it failed.
+ *
+ * Usage: LoadGenerator [--bots N] [--ramp-up seconds] [--duration seconds] [--port P] [--one-shot]
+ */
+public final class LoadGenerator {
+
+    private static final char END_OF_TRANSMISSION = 4;
+    private static final String[] SCRIPT = {"look", "get axe", "get coin", "goto forest", "get key", "chop tree",
+            "get log", "look", "goto cabin", "open trapdoor", "goto cellar", "pay elf", "get shovel", "hit elf",
+            "health", "goto cabin", "inv", "goto forest", "goto riverbank", "get horn", "blow horn", "bridge river",
+            "goto clearing", "dig ground", "get gold", "goto riverbank", "drop horn", "goto forest", "drop log",
+            "goto cabin", "drop axe", "drop coin", "look"};
+
+    private final String host;
+    private final int port;
+    private final int bots;
+    private final Duration rampUp;
+    private final Duration duration;
+    private final boolean sessions;
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private long elapsedNanos;
+
+    public LoadGenerator(String host, int port, int bots, Duration rampUp, Duration duration, boolean sessions) {
+        this.host = host;
+        this.port = port;
+        this.bots = bots;
+        this.rampUp = rampUp;
+        this.duration = duration;
+        this.sessions = sessions;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int bots = 50;
+        int rampUpSeconds = 5;
+        int durationSeconds = 30;
+        int port = 8888;
+        boolean sessions = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--bots": bots = Integer.parseInt(args[++i]); break;
+                case "--ramp-up": rampUpSeconds = Integer.parseInt(args[++i]); break;
+                case "--duration": durationSeconds = Integer.parseInt(args[++i]); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--one-shot": sessions = false; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        LoadGenerator generator = new LoadGenerator("localhost", port, bots,
+                Duration.ofSeconds(rampUpSeconds), Duration.ofSeconds(durationSeconds), sessions);
+        generator.run();
+        System.out.print(generator.report());
+    }
+
+    /**
+     * Latency histogram and counters for one command type, shared by every bot
+     */
+    public static final class CommandStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        public LatencyHistogram getLatency() { return latency; }
+
+        public long getCount() { return latency.getCount(); }
+
+        public long getErrors() { return errors.sum(); }
+    }
+
+    /**
+     * Starts the bots, waits for the ramp-up and the test duration, then stops them
+     * @return statistics per command type, keyed by the command's first word
+     */
+    public Map<String, CommandStats> run() throws InterruptedException {
+        long start = System.nanoTime();
+        long stopAt = start + rampUp.toNanos() + duration.toNanos();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < bots; i++) {
+            long startAt = start + (bots > 1 ? rampUp.toNanos() * i / (bots - 1) : 0);
+            Thread thread = new Thread(new Bot(botName(i), new Random(i), startAt, stopAt), "bot-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    /**
+     * Player names may only contain letters, so the bot number is spelled out in base 26
+     */
+    static String botName(int number) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.insert(0, (char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return "bot " + name;
+    }
+
+    private void record(String command, long nanos, boolean error) {
+        String type = command.split(" ", 2)[0];
+        CommandStats commandStats = stats.computeIfAbsent(type, key -> new CommandStats());
+        commandStats.latency.record(nanos);
+        if (error) { commandStats.errors.increment(); }
+    }
+
+    /**
+     * @return a table with one row per command type and a total row
+     */
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        double seconds = elapsedNanos / 1e9;
+        builder.append(String.format("%-10s %9s %9s %8s %9s %9s %9s %9s%n",
+                "command", "count", "per sec", "errors", "p50 ms", "p95 ms", "p99 ms", "p999 ms"));
+        LatencyHistogram all = new LatencyHistogram();
+        long allErrors = 0;
+        for (Map.Entry<String, CommandStats> entry : new TreeMap<>(stats).entrySet()) {
+            CommandStats commandStats = entry.getValue();
+            appendRow(builder, entry.getKey(), commandStats.latency, commandStats.getErrors(), seconds);
+            all.add(commandStats.latency);
+            allErrors += commandStats.getErrors();
+        }
+        appendRow(builder, "total", all, allErrors, seconds);
+        return builder.toString();
+    }
+
+    private static void appendRow(StringBuilder builder, String name, LatencyHistogram latency, long errors, double seconds) {
+        long count = latency.getCount();
+        builder.append(String.format("%-10s %9d %9.0f %7.2f%% %9.3f %9.3f %9.3f %9.3f%n", name, count,
+                seconds > 0 ? count / seconds : 0, count > 0 ? 100.0 * errors / count : 0,
+                latency.getValueAtQuantile(0.5) / 1e6, latency.getValueAtQuantile(0.95) / 1e6,
+                latency.getValueAtQuantile(0.99) / 1e6, latency.getValueAtQuantile(0.999) / 1e6));
+    }
+
+    private final class Bot implements Runnable {
+        private final String name;
+        private final Random random;
+        private final long startAt;
+        private final long stopAt;
+        private Socket socket;
+        private BufferedReader reader;
+        private BufferedWriter writer;
+        private boolean lastFailed;
+
+        private Bot(String name, Random random, long startAt, long stopAt) {
+            this.name = name;
+            this.random = random;
+            this.startAt = startAt;
+            this.stopAt = stopAt;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long wait = startAt - System.nanoTime();
+                if (wait > 0) { Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000)); }
+                int step = random.nextInt(SCRIPT.length);
+                while (System.nanoTime() < stopAt) {
+                    //mostly follow the script, sometimes look around or wander off it
+                    String command = random.nextInt(5) == 0 ? SCRIPT[random.nextInt(SCRIPT.length)] : SCRIPT[step];
+                    step = (step + 1) % SCRIPT.length;
+                    send(command);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void send(String command) {
+            long start = System.nanoTime();
+            boolean error;
+            try {
+                if (sessions) { sendInSession(command); } else { sendOneShot(command); }
+                error = lastFailed;
+            } catch (IOException e) {
+                error = true;
+                disconnect();
+            }
+            record(command, System.nanoTime() - start, error);
+        }
+
+        private String sendInSession(String command) throws IOException {
+            if (socket == null) {
+                connect();
+                writer.write(GameSession.OUTCOMES_COMMAND + "\n" + GameSession.SESSION_HANDSHAKE + name + "\n");
+                writer.flush();
+                readResponse();
+                readResponse();
+            }
+            writer.write(command + "\n");
+            writer.flush();
+            return readResponse();
+        }
+
+        private String sendOneShot(String command) throws IOException {
+            connect();
+            try {
+                writer.write(GameSession.OUTCOMES_COMMAND + "\n" + name + ": " + command + "\n");
+                writer.flush();
+                readResponse();
+                return readResponse();
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket(host, port);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        }
+
+        private String readResponse() throws IOException {
+            StringBuilder response = new StringBuilder();
+            String line = reader.readLine();
+            while (line != null && !line.contains("" + END_OF_TRANSMISSION)) {
+                response.append(line).append("\n");
+                line = reader.readLine();
+            }
+            if (line == null) { throw new IOException("Server disconnected (end-of-stream)"); }
+            lastFailed = line.endsWith("error");
+            return response.toString();
+        }
+
+        private void disconnect() {
+            if (socket == null) { return; }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.out.println("Error closing connection for " + name);
+            }
+            socket = null;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package edu.uob.Logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured logger that never makes the calling thread wait for log I/O.
+ * Events go into a fixed ring of reusable slots and a single background thread formats them as key=value lines
+ * and writes them out. When the ring is full the event is dropped and counted instead of blocking; the writer
+ * reports how many were dropped once it catches up. Below-level events are discarded before they are queued.
+ *
+ * The default logger writes to standard output. Its level and ring size come from the system properties
+ * stag.log.level (DEBUG, INFO, WARN, ERROR or OFF, default INFO) and stag.log.capacity (default 8192).
+ */
+public final class AsyncLogger implements AutoCloseable {
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long written = 0;
+    private final LongAdder dropped = new LongAdder();
+    private long droppedReported = 0;
+    private final Writer out;
+    private final Thread writerThread;
+    private volatile LogLevel level;
+    private volatile boolean running = true;
+
+    /**
+     * One reusable event. A slot is free for the producer that claimed sequence s once the writer has passed
+     * s - capacity, and is handed to the writer by the volatile write of its sequence number.
+     */
+    private static final class Slot {
+        private volatile long sequence;
+        private LogLevel level;
+        private long timestamp;
+        private String event;
+        private String player;
+        private String command;
+        private long latencyNanos;
+        private String outcome;
+        private String message;
+    }
+
+    private static final class DefaultHolder {
+        private static final AsyncLogger DEFAULT = createDefault();
+
+        private static AsyncLogger createDefault() {
+            LogLevel level = LogLevel.valueOf(System.getProperty("stag.log.level", "INFO").toUpperCase());
+            int capacity = Integer.getInteger("stag.log.capacity", 8192);
+            AsyncLogger logger = new AsyncLogger(new OutputStreamWriter(System.out), capacity, level);
+            Runtime.getRuntime().addShutdownHook(new Thread(logger::close));
+            return logger;
+        }
+    }
+
+    /**
+     * @param out where formatted lines are written; only the background thread touches it
+     * @param capacity number of events that can be waiting at once, rounded up to a power of two
+     * @param level lowest level that is logged
+     */
+    public AsyncLogger(Writer out, int capacity, LogLevel level) {
+        if (capacity < 1) { throw new IllegalArgumentException("The log buffer needs room for at least one event"); }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (capacity == 1) { size = 1; }
+        ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+            ring[i].sequence = i - size;
+        }
+        mask = size - 1;
+        this.out = new BufferedWriter(out);
+        this.level = level;
+        writerThread = new Thread(this::drain, "log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * @return the process wide logger used by the server
+     */
+    public static AsyncLogger getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    public boolean isEnabled(LogLevel eventLevel) {
+        return eventLevel.compareTo(level) >= 0 && eventLevel != LogLevel.OFF;
+    }
+
+    public void setLevel(LogLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Logs a server event such as a connection opening
+     * @param event short machine friendly name, e.g. "connection_opened"
+     * @param message free text detail, may be null
+     */
+    public void log(LogLevel eventLevel, String event, String message) {
+        publish(eventLevel, event, null, null, -1, null, message);
+    }
+
+    /**
+     * Logs one handled command
+     * @param player the player that sent it, null if it couldn't be worked out
+     * @param command the line as received
+     * @param latencyNanos time taken to answer it
+     * @param outcome e.g. "ok" or "error"
+     */
+    public void logCommand(LogLevel eventLevel, String player, String command, long latencyNanos, String outcome) {
+        publish(eventLevel, "command", player, command, latencyNanos, outcome, null);
+    }
+
+    private void publish(LogLevel eventLevel, String event, String player, String command, long latencyNanos,
+                         String outcome, String message) {
+        if (!isEnabled(eventLevel) || !running) { return; }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - written >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.level = eventLevel;
+        slot.timestamp = System.currentTimeMillis();
+        slot.event = event;
+        slot.player = player;
+        slot.command = command;
+        slot.latencyNanos = latencyNanos;
+        slot.outcome = outcome;
+        slot.message = message;
+        slot.sequence = sequence;
+    }
+
+    /**
+     * @return number of events thrown away because the buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes out everything already queued, then stops the background writer. Later events are ignored.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder();
+        try {
+            while (running || written < claimed.get()) {
+                Slot slot = ring[(int) (written & mask)];
+                if (slot.sequence != written) {
+                    //nothing published yet: flush what has been written and wait a little
+                    reportDrops(line);
+                    out.flush();
+                    if (running) { LockSupport.parkNanos(IDLE_PARK_NANOS); }
+                    continue;
+                }
+                line.setLength(0);
+                format(slot, line);
+                slot.player = null;
+                slot.command = null;
+                slot.outcome = null;
+                slot.message = null;
+                written++;
+                out.append(line);
+            }
+            reportDrops(line);
+            out.flush();
+        } catch (IOException e) {
+            running = false;
+        }
+    }
+
+    private void reportDrops(StringBuilder line) throws IOException {
+        long droppedNow = dropped.sum();
+        if (droppedNow == droppedReported) { return; }
+        line.setLength(0);
+        line.append(Instant.now()).append(' ').append(LogLevel.WARN).append(" event=log_dropped count=")
+                .append(droppedNow - droppedReported).append('\n');
+        droppedReported = droppedNow;
+        out.append(line);
+    }
+
+    private static void format(Slot slot, StringBuilder line) {
+        line.append(Instant.ofEpochMilli(slot.timestamp)).append(' ').append(slot.level);
+        appendField(line, "event", slot.event);
+        appendField(line, "player", slot.player);
+        appendField(line, "command", slot.command);
+        if (slot.latencyNanos >= 0) {
+            line.append(" latency_us=").append(slot.latencyNanos / 1000);
+        }
+        appendField(line, "outcome", slot.outcome);
+        appendField(line, "message", slot.message);
+        line.append('\n');
+    }
+
+    /**
+     * Appends key=value, quoting the value if it contains spaces, quotes or anything that isn't printable
+     */
+    static void appendField(StringBuilder line, String key, String value) {
+        if (value == null) { return; }
+        line.append(' ').append(key).append('=');
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=' || c == '\\';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else if (c < ' ') {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,8 @@
+package edu.uob.Logging;
+
+/**
+ * Severity of a log event; an AsyncLogger drops everything below its configured level before it is queued
+ */
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR, OFF
+}
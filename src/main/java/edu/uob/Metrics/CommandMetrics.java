@@ -0,0 +1,102 @@
+package edu.uob.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit and error counters plus latency histograms for one basic command or action trigger.
+ * The whole command and each CommandPhase get their own histogram.
+ * Counters are LongAdders, which stripe their cells across threads, so recording never contends on one value.
+ */
+public final class CommandMetrics implements CommandMetricsMXBean {
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram[] phases = new LatencyHistogram[CommandPhase.COUNT];
+
+    CommandMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records one finished command; does not allocate
+     * @param phaseNanos time spent in each phase, indexed by CommandPhase ordinal
+     */
+    void record(long[] phaseNanos, long totalNanos, boolean error) {
+        hits.increment();
+        if (error) { errors.increment(); }
+        total.record(totalNanos);
+        for (int i = 0; i < phases.length; i++) {
+            phases[i].record(phaseNanos[i]);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    public LatencyHistogram getPhase(CommandPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getP50Micros() {
+        return total.getValueAtQuantile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return total.getValueAtQuantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return total.getValueAtQuantile(0.999) / 1e3;
+    }
+
+    @Override
+    public double getParseP99Micros() {
+        return getPhase(CommandPhase.PARSE).getValueAtQuantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getResolveP99Micros() {
+        return getPhase(CommandPhase.RESOLVE).getValueAtQuantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getExecuteP99Micros() {
+        return getPhase(CommandPhase.EXECUTE).getValueAtQuantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getRenderP99Micros() {
+        return getPhase(CommandPhase.RENDER).getValueAtQuantile(0.99) / 1e3;
+    }
+
+    void reset() {
+        hits.reset();
+        errors.reset();
+        total.reset();
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+    }
+}
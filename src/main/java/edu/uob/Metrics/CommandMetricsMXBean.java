@@ -0,0 +1,25 @@
+package edu.uob.Metrics;
+
+/**
+ * JMX view of one command's metrics, registered as edu.uob:type=CommandMetrics,name=&lt;command&gt;.
+ * Latencies are in microseconds.
+ */
+public interface CommandMetricsMXBean {
+    long getHits();
+
+    long getErrors();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getParseP99Micros();
+
+    double getResolveP99Micros();
+
+    double getExecuteP99Micros();
+
+    double getRenderP99Micros();
+}
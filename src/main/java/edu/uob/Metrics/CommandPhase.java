@@ -0,0 +1,17 @@
+package edu.uob.Metrics;
+
+/**
+ * The stages a command goes through on the server, each timed separately by CommandTimer
+ */
+public enum CommandPhase {
+    /** splitting off the player name, lower casing and tokenising the command */
+    PARSE,
+    /** finding the command word or action and the entities, paths and locations it refers to */
+    RESOLVE,
+    /** changing the game state */
+    EXECUTE,
+    /** building the response text */
+    RENDER;
+
+    static final int COUNT = values().length;
+}
@@ -0,0 +1,82 @@
+package edu.uob.Metrics;
+
+import java.util.Arrays;
+
+/**
+ * Times the command running on the current thread, phase by phase.
+ * There is one reusable timer per thread, so timing a command never allocates.
+ * begin/end calls may nest (GameServer.handleCommand wraps GameCommandHandler.handleCommand);
+ * only the outermost pair records anything, against whichever command the inner code resolved.
+ */
+public final class CommandTimer {
+    private static final ThreadLocal<CommandTimer> TIMERS = ThreadLocal.withInitial(CommandTimer::new);
+    private final long[] phaseNanos = new long[CommandPhase.COUNT];
+    private int depth = 0;
+    private CommandMetrics command;
+    private CommandPhase phase;
+    private long started;
+    private long phaseStarted;
+    private boolean failed;
+    private boolean lastFailed;
+
+    private CommandTimer() {
+    }
+
+    public static CommandTimer current() {
+        return TIMERS.get();
+    }
+
+    /**
+     * Starts timing a command in the PARSE phase, unless a command is already being timed on this thread
+     * @param unresolved where to record the command if it never gets resolved to a known command
+     */
+    public void begin(CommandMetrics unresolved) {
+        if (depth++ > 0) { return; }
+        Arrays.fill(phaseNanos, 0);
+        command = unresolved;
+        phase = CommandPhase.PARSE;
+        failed = false;
+        started = System.nanoTime();
+        phaseStarted = started;
+    }
+
+    /**
+     * Charges the time since the last switch to the current phase and moves on to the next one
+     */
+    public void enter(CommandPhase next) {
+        if (depth == 0) { return; }
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - phaseStarted;
+        phase = next;
+        phaseStarted = now;
+    }
+
+    /**
+     * @param resolved the command or action trigger the metrics should be recorded against
+     */
+    public void resolvedAs(CommandMetrics resolved) {
+        if (depth > 0) { command = resolved; }
+    }
+
+    /**
+     * Ends the matching begin; the outermost end records the command
+     * @param error true if the command was rejected or failed
+     */
+    public void end(boolean error) {
+        if (depth == 0) { return; }
+        failed |= error;
+        if (--depth > 0) { return; }
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - phaseStarted;
+        command.record(phaseNanos, now - started, failed);
+        command = null;
+        lastFailed = failed;
+    }
+
+    /**
+     * @return whether the last command finished on this thread was rejected or failed
+     */
+    public boolean lastCommandFailed() {
+        return lastFailed;
+    }
+}
@@ -0,0 +1,125 @@
+package edu.uob.Metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size, lock-free latency histogram with log-linear buckets in the style of HdrHistogram.
+ * Values are recorded in nanoseconds. Each power of two range is split into SUB_BUCKETS equal buckets,
+ * so any recorded value is reported within 1/SUB_BUCKETS (about 3%) of its true value.
+ * Recording is a single atomic increment and never allocates, so it can be left on in production.
+ * Counts are striped like a LongAdder: each thread records into one of STRIPES arrays picked by its identity hash,
+ * so threads recording at once don't fight over the same cache lines. A stripe is only allocated once a thread
+ * records into it, and reads add the stripes up.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * covers every positive long; the first range holds values 0 to SUB_BUCKETS - 1 exactly
+     */
+    private static final int RANGES = 64 - SUB_BUCKET_BITS + 1;
+    private static final int BUCKETS = RANGES * SUB_BUCKETS;
+    /**
+     * the number of processors rounded up to a power of two, at most 64
+     */
+    static final int STRIPES = Math.min(64, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    public void record(long nanos) {
+        stripeFor(Thread.currentThread()).incrementAndGet(bucketOf(Math.max(0, nanos)));
+    }
+
+    private AtomicLongArray stripeFor(Thread thread) {
+        int hash = System.identityHashCode(thread);
+        int index = (hash ^ (hash >>> 16)) & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    /**
+     * @return every bucket's count, summed over the stripes
+     */
+    private long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) { continue; }
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) { return (int) value; }
+        int range = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> (range - 1)) - SUB_BUCKETS;
+        return range * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value that falls into the given bucket
+     */
+    static long upperBoundOf(int bucket) {
+        int range = bucket / SUB_BUCKETS;
+        int subBucket = bucket % SUB_BUCKETS;
+        if (range == 0) { return subBucket; }
+        long lowest = (long) (SUB_BUCKETS + subBucket) << (range - 1);
+        return lowest + (1L << (range - 1)) - 1;
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (long count : counts()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99 for p99
+     * @return the recorded value at that quantile in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] counts = counts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) { return 0; }
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) { return upperBoundOf(i); }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    /**
+     * Adds every count recorded in the other histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        long[] counts = other.counts();
+        AtomicLongArray stripe = stripeFor(Thread.currentThread());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) { stripe.addAndGet(i, counts[i]); }
+        }
+    }
+
+    public void reset() {
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) { continue; }
+            for (int i = 0; i < BUCKETS; i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package edu.uob.Metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Per-command metrics for one GameServer: one CommandMetrics for each basic command, one for each action trigger
+ * and one for commands that could not be resolved to either.
+ * Every entry is created up front, so looking one up on the request path is a read from a map that never changes.
+ * Triggers added once the server is running (see addTriggers) get a new map with the old entries kept.
+ */
+public final class ServerMetrics implements ServerMetricsMXBean {
+    private static final List<String> BASIC_COMMANDS = Arrays.asList("look", "inv", "get", "drop", "goto", "health", "route");
+    private final Map<String, CommandMetrics> basicCommands;
+    private volatile Map<String, CommandMetrics> triggers = Collections.emptyMap();
+    private final CommandMetrics unknown = new CommandMetrics("unknown");
+    private boolean registered = false;
+
+    /**
+     * @param actionTriggers every trigger phrase in the game's actions file
+     */
+    public ServerMetrics(Collection<String> actionTriggers) {
+        Map<String, CommandMetrics> basic = new LinkedHashMap<>();
+        for (String command : BASIC_COMMANDS) {
+            basic.put(command, new CommandMetrics(command));
+        }
+        basic.put("inventory", basic.get("inv"));
+        basicCommands = Collections.unmodifiableMap(basic);
+        addTriggers(actionTriggers);
+    }
+
+    /**
+     * Starts counting any of the triggers that aren't counted yet, e.g. after more actions have been loaded.
+     * Counts already made for the other triggers are kept.
+     * @param actionTriggers every trigger phrase the game now has
+     */
+    public synchronized void addTriggers(Collection<String> actionTriggers) {
+        Map<String, CommandMetrics> actions = new TreeMap<>(triggers);
+        for (String trigger : actionTriggers) {
+            if (actions.containsKey(trigger)) { continue; }
+            CommandMetrics metrics = new CommandMetrics(trigger);
+            actions.put(trigger, metrics);
+            if (registered) { registerTrigger(ManagementFactory.getPlatformMBeanServer(), metrics); }
+        }
+        triggers = Collections.unmodifiableMap(actions);
+    }
+
+    /**
+     * @param commandWord a basic command word, "inventory" is counted as "inv"
+     * @return the metrics for that command, or the unknown command's metrics
+     */
+    public CommandMetrics forCommand(String commandWord) {
+        return basicCommands.getOrDefault(commandWord, unknown);
+    }
+
+    /**
+     * @param trigger an action trigger phrase
+     * @return the metrics for that trigger, or the unknown command's metrics
+     */
+    public CommandMetrics forTrigger(String trigger) {
+        return triggers.getOrDefault(trigger, unknown);
+    }
+
+    public CommandMetrics getUnknown() {
+        return unknown;
+    }
+
+    /**
+     * @return a table with a row for every command that has been used at least once
+     */
+    @Override
+    public String getReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-16s %8s %7s %9s %9s %9s %9s %9s %9s %9s%n", "command", "hits", "errors",
+                "p50 us", "p99 us", "p999 us", "parse99", "resolve99", "exec99", "render99"));
+        for (String command : BASIC_COMMANDS) {
+            appendRow(builder, basicCommands.get(command));
+        }
+        for (CommandMetrics trigger : triggers.values()) {
+            appendRow(builder, trigger);
+        }
+        appendRow(builder, unknown);
+        return builder.toString();
+    }
+
+    private static void appendRow(StringBuilder builder, CommandMetrics metrics) {
+        if (metrics.getHits() == 0) { return; }
+        builder.append(String.format("%-16s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", metrics.getName(),
+                metrics.getHits(), metrics.getErrors(), metrics.getP50Micros(), metrics.getP99Micros(),
+                metrics.getP999Micros(), metrics.getParseP99Micros(), metrics.getResolveP99Micros(),
+                metrics.getExecuteP99Micros(), metrics.getRenderP99Micros()));
+    }
+
+    @Override
+    public void reset() {
+        for (CommandMetrics metrics : basicCommands.values()) {
+            metrics.reset();
+        }
+        for (CommandMetrics metrics : triggers.values()) {
+            metrics.reset();
+        }
+        unknown.reset();
+    }
+
+    /**
+     * Registers this object and every command's metrics with the platform MBean server,
+     * replacing anything registered under the same names before
+     */
+    public synchronized void registerMBeans() {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(mBeanServer, new ObjectName("edu.uob:type=ServerMetrics"), this);
+            for (String command : BASIC_COMMANDS) {
+                register(mBeanServer, commandName("basic", command), basicCommands.get(command));
+            }
+            for (CommandMetrics trigger : triggers.values()) {
+                registerTrigger(mBeanServer, trigger);
+            }
+            register(mBeanServer, commandName("basic", unknown.getName()), unknown);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+        registered = true;
+    }
+
+    private static void registerTrigger(MBeanServer mBeanServer, CommandMetrics trigger) {
+        try {
+            register(mBeanServer, commandName("action", trigger.getName()), trigger);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ObjectName commandName(String kind, String name) throws JMException {
+        return new ObjectName("edu.uob:type=CommandMetrics,kind=" + kind + ",name=" + ObjectName.quote(name));
+    }
+
+    private static void register(MBeanServer mBeanServer, ObjectName name, Object bean) throws JMException {
+        if (mBeanServer.isRegistered(name)) { mBeanServer.unregisterMBean(name); }
+        mBeanServer.registerMBean(bean, name);
+    }
+}
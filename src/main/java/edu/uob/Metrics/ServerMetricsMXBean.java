@@ -0,0 +1,13 @@
+package edu.uob.Metrics;
+
+/**
+ * JMX view of the server's command metrics as a whole, registered as edu.uob:type=ServerMetrics
+ */
+public interface ServerMetricsMXBean {
+    /**
+     * @return the same table the #metrics admin command returns
+     */
+    String getReport();
+
+    void reset();
+}
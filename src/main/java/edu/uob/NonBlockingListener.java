@@ -0,0 +1,227 @@
+package edu.uob;
+
+import edu.uob.Logging.AsyncLogger;
+import edu.uob.Logging.LogLevel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector based listener that multiplexes many client connections on a small, fixed number of threads.
+ * Speaks exactly the same protocol as GameServer.blockingListenOn: newline terminated lines in, each
+ * response followed by "\n" + END_OF_TRANSMISSION + "\n" out, with GameSession deciding when to close.
+ * A connection that sends more than MAX_LINE_LENGTH bytes without a newline is closed, so a client can't make
+ * the server buffer an endless line.
+ */
+final class NonBlockingListener {
+
+    private static final int READ_BUFFER_SIZE = 1024;
+    static final int MAX_LINE_LENGTH = 8192;
+    private static final AsyncLogger LOG = AsyncLogger.getDefault();
+    private final GameServer server;
+    private final Charset charset = Charset.defaultCharset();
+    private final Worker[] workers;
+    private int nextWorker = 0;
+
+    NonBlockingListener(GameServer server, int workerThreads) {
+        if (workerThreads < 1) { throw new IllegalArgumentException("At least one worker thread is needed"); }
+        this.server = server;
+        this.workers = new Worker[workerThreads];
+    }
+
+    /**
+     * Accepts connections on the calling thread and hands each one to a worker selector in turn.
+     * Runs until the calling thread is interrupted.
+     * @param portNumber The port to listen on.
+     * @throws IOException If the listening socket or a selector could not be opened.
+     */
+    void listenOn(int portNumber) throws IOException {
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(Selector.open());
+            Thread thread = new Thread(workers[i], "nio-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open();
+             Selector acceptSelector = Selector.open()) {
+            serverChannel.bind(new InetSocketAddress(portNumber));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+            LOG.log(LogLevel.INFO, "server_listening", "non-blocking on port " + portNumber);
+            while (!Thread.interrupted()) {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    workers[nextWorker].register(channel);
+                    nextWorker = (nextWorker + 1) % workers.length;
+                }
+            }
+        } finally {
+            for (Worker worker : workers) {
+                if (worker != null) { worker.selector.close(); }
+            }
+        }
+    }
+
+    /**
+     * Runs the line through the connection's session; the game server is thread-safe, so workers don't wait for each other
+     * @param session the session of the connection the line arrived on
+     * @param line the line received, without its newline
+     * @return the framed response to send back to the client
+     */
+    private ByteBuffer respondTo(GameSession session, String line) {
+        return charset.encode(session.frame(session.respondTo(line)));
+    }
+
+    /**
+     * Per-connection state: the session, the bytes of the line received so far and the responses still to be written.
+     */
+    private final class Connection {
+        private final GameSession session = new GameSession(server, LOG);
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final Queue<ByteBuffer> responses = new ArrayDeque<>();
+    }
+
+    private final class Worker implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        private Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        private void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handleKey(key);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                LOG.log(LogLevel.INFO, "worker_stopped", Thread.currentThread().getName());
+            }
+        }
+
+        private void registerPending() throws IOException {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                channel.register(selector, SelectionKey.OP_READ, new Connection());
+                LOG.log(LogLevel.INFO, "connection_opened", String.valueOf(channel.getRemoteAddress()));
+            }
+        }
+
+        private void handleKey(SelectionKey key) {
+            try {
+                if (key.isReadable()) { read(key); }
+                if (key.isValid() && key.isWritable()) { write(key); }
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+
+        /**
+         * Reads whatever is available and answers every complete line in the order it arrived.
+         * Mirrors BufferedReader.readLine: "\r\n" is accepted and a final unterminated line still counts.
+         * Once the session is finished any further input is ignored, as in the blocking listener.
+         */
+        private void read(SelectionKey key) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            Connection connection = (Connection) key.attachment();
+            readBuffer.clear();
+            int bytesRead = channel.read(readBuffer);
+            readBuffer.flip();
+            while (readBuffer.hasRemaining() && connection.session.isOpen()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    answerLine(connection);
+                } else if (connection.line.size() == MAX_LINE_LENGTH) {
+                    LOG.log(LogLevel.WARN, "line_too_long", String.valueOf(channel.getRemoteAddress()));
+                    close(key);
+                    return;
+                } else {
+                    connection.line.write(b);
+                }
+            }
+            if (bytesRead == -1) {
+                if (connection.line.size() > 0 && connection.session.isOpen()) { answerLine(connection); }
+                if (connection.responses.isEmpty()) {
+                    close(key);
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            updateInterest(key, connection);
+        }
+
+        private void answerLine(Connection connection) {
+            byte[] bytes = connection.line.toByteArray();
+            connection.line.reset();
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') { length--; }
+            String line = new String(bytes, 0, length, charset);
+            connection.responses.add(respondTo(connection.session, line));
+        }
+
+        private void write(SelectionKey key) throws IOException {
+            Connection connection = (Connection) key.attachment();
+            SocketChannel channel = (SocketChannel) key.channel();
+            while (!connection.responses.isEmpty()) {
+                ByteBuffer response = connection.responses.peek();
+                channel.write(response);
+                if (response.hasRemaining()) { return; }
+                connection.responses.poll();
+            }
+            if (!connection.session.isOpen() || (key.interestOps() & SelectionKey.OP_READ) == 0) {
+                close(key);
+                return;
+            }
+            updateInterest(key, connection);
+        }
+
+        /**
+         * Keeps reading while the session is open and asks to write while responses are queued
+         */
+        private void updateInterest(SelectionKey key, Connection connection) {
+            int ops = connection.session.isOpen() ? SelectionKey.OP_READ : 0;
+            if (!connection.responses.isEmpty()) { ops |= SelectionKey.OP_WRITE; }
+            key.interestOps(ops);
+        }
+
+        private void close(SelectionKey key) {
+            ((Connection) key.attachment()).session.close();
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                LOG.log(LogLevel.DEBUG, "connection_closed", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.uob;
+
+/**
+ * A "name: command" line parsed in a single pass over its characters without copying anything out of it:
+ * only the bounds of the trimmed player name and command are recorded, along with whether the name is valid.
+ * A valid name is made of letters, whitespace, spaces, apostrophes and hyphens, as the [a-zA-Z\s '-]+ pattern
+ * that used to be compiled for every command allowed. Trimming removes characters up to ' ', like String.trim.
+ */
+final class PlayerCommandLine {
+    private final CharSequence line;
+    private int nameStart;
+    private int nameEnd;
+    private int commandStart;
+    private int commandEnd;
+    private boolean separator;
+    private boolean validName;
+
+    private PlayerCommandLine(CharSequence line) {
+        this.line = line;
+    }
+
+    static PlayerCommandLine parse(CharSequence line) {
+        PlayerCommandLine parsed = new PlayerCommandLine(line);
+        int length = line.length();
+        int first = -1;
+        int last = -1;
+        boolean invalid = false;
+        //a character that can't be in a name but is trimmed away if nothing else follows it
+        boolean pendingInvalid = false;
+        int i = 0;
+        for (; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == ':') { break; }
+            if (c > ' ') {
+                if (first < 0) { first = i; }
+                last = i;
+                invalid |= !isNameChar(c) || pendingInvalid;
+                pendingInvalid = false;
+            } else if (first >= 0 && !isNameChar(c)) {
+                pendingInvalid = true;
+            }
+        }
+        parsed.separator = i < length;
+        parsed.nameStart = first < 0 ? i : first;
+        parsed.nameEnd = first < 0 ? i : last + 1;
+        parsed.validName = first >= 0 && !invalid;
+        parsed.commandStart = trimStart(line, Math.min(i + 1, length), length);
+        parsed.commandEnd = trimEnd(line, parsed.commandStart, length);
+        return parsed;
+    }
+
+    /**
+     * @return true if the whole of text[start, end) is a valid player name
+     */
+    static boolean isValidName(CharSequence text, int start, int end) {
+        if (start >= end) { return false; }
+        for (int i = start; i < end; i++) {
+            if (!isNameChar(text.charAt(i))) { return false; }
+        }
+        return true;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == ' ' || c == '\'' || c == '-'
+                || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    static int trimStart(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') { start++; }
+        return start;
+    }
+
+    static int trimEnd(CharSequence text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') { end--; }
+        return end;
+    }
+
+    CharSequence getLine() { return line; }
+
+    /**
+     * @return true if the line has the ':' between name and command
+     */
+    boolean hasSeparator() { return separator; }
+
+    boolean hasValidName() { return validName; }
+
+    int getNameStart() { return nameStart; }
+
+    int getNameEnd() { return nameEnd; }
+
+    int getCommandStart() { return commandStart; }
+
+    int getCommandEnd() { return commandEnd; }
+}
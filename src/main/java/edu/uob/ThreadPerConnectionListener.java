@@ -0,0 +1,140 @@
+package edu.uob;
+
+import edu.uob.Logging.AsyncLogger;
+import edu.uob.Logging.LogLevel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener that serves every connection on its own thread with the blocking GameServer.serveConnection; both
+ * blockingListenOn and threadPerConnectionListenOn use it.
+ * Uses a virtual thread per connection when the runtime has them (Java 21+), otherwise a cached pool of
+ * platform threads. The number of sessions served at once is capped; connections over the cap are told the
+ * server is full and closed straight away.
+ */
+final class ThreadPerConnectionListener {
+
+    private static final AsyncLogger LOG = AsyncLogger.getDefault();
+    private final GameServer server;
+    private final Semaphore sessionPermits;
+    private final ExecutorService sessionThreads = newSessionExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile ServerSocket serverSocket;
+    private volatile boolean shuttingDown = false;
+
+    ThreadPerConnectionListener(GameServer server, int maxSessions) {
+        if (maxSessions < 1) { throw new IllegalArgumentException("At least one session must be allowed"); }
+        this.server = server;
+        this.sessionPermits = new Semaphore(maxSessions);
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor reflectively so the code still builds for Java 17
+     * @return a virtual thread per task executor if available, otherwise a cached platform thread pool
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Accepts connections on the calling thread until shutdown is called
+     * @param portNumber The port to listen on.
+     * @throws IOException If the listening socket could not be opened.
+     */
+    void listenOn(int portNumber) throws IOException {
+        try (ServerSocket s = new ServerSocket(portNumber)) {
+            serverSocket = s;
+            LOG.log(LogLevel.INFO, "server_listening", "thread per connection on port " + portNumber);
+            while (!shuttingDown) {
+                Socket client;
+                try {
+                    client = s.accept();
+                } catch (SocketException e) {
+                    //the server socket was closed by shutdown
+                    break;
+                }
+                if (sessionPermits.tryAcquire()) {
+                    openSockets.add(client);
+                    sessionThreads.execute(() -> serve(client));
+                } else {
+                    reject(client);
+                }
+            }
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void serve(Socket client) {
+        try (client) {
+            server.serveConnection(client);
+        } catch (IOException e) {
+            LOG.log(LogLevel.DEBUG, "connection_closed", e.getMessage());
+        } finally {
+            sessionPermits.release();
+            openSockets.remove(client);
+        }
+    }
+
+    private void reject(Socket client) {
+        try (client; BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(client.getOutputStream()))) {
+            writer.write("Error: the server is full, please try again later");
+            writer.write("\n" + GameServer.END_OF_TRANSMISSION + "\n");
+            LOG.log(LogLevel.WARN, "connection_rejected", "server full");
+        } catch (IOException e) {
+            LOG.log(LogLevel.DEBUG, "connection_closed", e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of sessions currently being served
+     */
+    int getOpenSessions() {
+        return openSockets.size();
+    }
+
+    /**
+     * Stops accepting new connections and lets open sessions finish their current command.
+     * Sessions still connected after the grace period have their sockets closed, which ends their blocking reads.
+     * @param gracePeriod how long to wait for clients to disconnect by themselves
+     */
+    void shutdown(Duration gracePeriod) {
+        shuttingDown = true;
+        try {
+            ServerSocket s = serverSocket;
+            if (s != null) { s.close(); }
+            stopped.await(gracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+            sessionThreads.shutdown();
+            if (!sessionThreads.awaitTermination(gracePeriod.toMillis(), TimeUnit.MILLISECONDS)) {
+                for (Socket socket : openSockets) {
+                    socket.close();
+                }
+                sessionThreads.awaitTermination(gracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException e) {
+            LOG.log(LogLevel.WARN, "shutdown_failed", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
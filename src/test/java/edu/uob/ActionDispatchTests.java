@@ -0,0 +1,97 @@
+package edu.uob;
+
+import edu.uob.Actions.GameAction;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//kept apart from ActionsFileTests, whose set up needs the custom configuration files
+final class ActionDispatchTests {
+    File actionsFile = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+    File extEntities = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+    File extActions = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+
+    // Actions loaded after the server has started are picked up by the precompiled dispatch tables
+    @Test
+    void testActionsLoadedLaterAreDispatched() throws Exception {
+        GameServer server = new GameServer(extEntities, actionsFile);
+        assertTrue(server.handleCommand("simon: pay elf").contains("doesn't know what to do"));
+        server.getActionsFromFile(extActions);
+        String response = server.handleCommand("simon: pay elf");
+        assertFalse(response.contains("doesn't know what to do"), response);
+    }
+
+    @Test
+    void testItemHeldByAnyOtherPlayerBlocksAction() {
+        GameServer server = new GameServer(extEntities, extActions);
+        GameAction whittle = new GameAction(Set.of("whittle"), Set.of("tree"), Set.of(), Set.of("axe"), "You whittle an axe from the tree");
+        server.gameActionMap.put("whittle", new HashSet<>(Set.of(whittle)));
+        server.commandHandler.rebuildDispatch();
+        //plenty of players online, only one of them matters
+        for (int i = 0; i < 300; i++) {
+            server.handleCommand(LoadGenerator.botName(i) + ": look");
+        }
+        server.handleCommand("holder: get axe");
+        server.handleCommand("carver: goto forest");
+        assertEquals("holder", server.entityIndex.holderOf("axe").getName());
+        assertTrue(server.handleCommand("carver: whittle tree").contains("another player's inventory"));
+
+        server.handleCommand("holder: drop axe");
+        assertNull(server.entityIndex.holderOf("axe"));
+        assertTrue(server.handleCommand("carver: whittle tree").contains("whittle an axe"));
+        assertTrue(server.gameLocations.get("forest").getArtefacts().containsKey("axe"));
+    }
+
+    @Test
+    void testEntityDroppedWhileActionWaitsIsFound() throws Exception {
+        GameServer server = new GameServer(extEntities, extActions);
+        GameAction whittle = new GameAction(Set.of("whittle"), Set.of("tree"), Set.of(), Set.of("axe"), "You whittle an axe from the tree");
+        server.gameActionMap.put("whittle", new HashSet<>(Set.of(whittle)));
+        server.commandHandler.rebuildDispatch();
+        server.handleCommand("holder: get axe");
+        server.handleCommand("carver: goto forest");
+
+        //the carver finds the axe in nobody's location, then waits for the forest while the holder drops it in the cabin
+        ReentrantLock forest = server.gameLocations.get("forest").getLock();
+        forest.lock();
+        FutureTask<String> whittling = new FutureTask<>(() -> server.handleCommand("carver: whittle tree"));
+        try {
+            new Thread(whittling).start();
+            while (!forest.hasQueuedThreads()) { Thread.sleep(1); }
+            server.handleCommand("holder: drop axe");
+        } finally {
+            forest.unlock();
+        }
+        assertTrue(whittling.get(5, TimeUnit.SECONDS).contains("whittle an axe"));
+        assertTrue(server.gameLocations.get("forest").getArtefacts().containsKey("axe"));
+        assertFalse(server.gameLocations.get("cabin").getArtefacts().containsKey("axe"));
+    }
+
+    @Test
+    void testFailedActionChangesNothing() {
+        GameServer server = new GameServer(extEntities, extActions);
+        GameAction summon = new GameAction(Set.of("summon"), Set.of("tree"), Set.of("dragon"), Set.of("axe"), "A dragon appears");
+        GameAction tunnel = new GameAction(Set.of("tunnel"), Set.of("tree"), Set.of("cellar"), Set.of("potion"), "You tunnel away");
+        server.gameActionMap.put("summon", new HashSet<>(Set.of(summon)));
+        server.gameActionMap.put("tunnel", new HashSet<>(Set.of(tunnel)));
+        server.commandHandler.rebuildDispatch();
+        server.handleCommand("simon: goto forest");
+
+        //the dragon can't be found, so the axe must not be produced first
+        assertTrue(server.handleCommand("simon: summon near the tree").contains("Cannot locate entity to be consumed"));
+        assertTrue(server.gameLocations.get("cabin").getArtefacts().containsKey("axe"));
+        assertFalse(server.gameLocations.get("forest").getArtefacts().containsKey("axe"));
+
+        //there's no path from the forest to the cellar to close
+        assertTrue(server.handleCommand("simon: tunnel under the tree").contains("Location to consume doesn't exist"));
+        assertTrue(server.gameLocations.get("cabin").getArtefacts().containsKey("potion"));
+    }
+}
@@ -171,7 +171,7 @@ final class ActionsFileTests {
 
     @Test
     void testAdvancedCommandParser(){
-      AdvancedCommandHandler handler = new AdvancedCommandHandler(testServer.gameLocations, testServer.gameActionMap, testServer.allEntities, testServer.players);
+      AdvancedCommandHandler handler = new AdvancedCommandHandler(testServer.gameLocations, testServer.gameActionMap, testServer.entityIndex, testServer.players);
       String command = "I want to unlock the door";
       String fight = "I got SERIOUS beef w this elf let me FIGHT him";
       String split = "I would really like to cutdown that tree";
@@ -259,7 +259,7 @@ final class ActionsFileTests {
 
     @Test
     void testFindEntityLocation(){
-      AdvancedCommandHandler handler = new AdvancedCommandHandler(testServer.gameLocations, testServer.gameActionMap, testServer.allEntities, testServer.players);
+      AdvancedCommandHandler handler = new AdvancedCommandHandler(testServer.gameLocations, testServer.gameActionMap, testServer.entityIndex, testServer.players);
         GameEntityLocation location = handler.findEntityLocation("axe");
         assertEquals("cabin", location.getName());
 
@@ -378,5 +378,4 @@ final class ActionsFileTests {
         //trying to lock the cellar twice should not be allowed
         assertFalse(complexServer.handleCommand("tony: lock with key").contains("You lock the trapdoor back up"));
     }
-
 }
@@ -0,0 +1,185 @@
+package edu.uob;
+
+import edu.uob.Entities.GameEntityLocation;
+import edu.uob.Entities.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class ConcurrencyTests {
+
+    private static final int THREADS = 8;
+    private static final int COMMANDS_PER_THREAD = 2000;
+    private static final String[] COMMANDS = {"look", "inv", "health", "get axe", "get potion", "get coin", "get key",
+            "get log", "get shovel", "get horn", "drop axe", "drop potion", "drop coin", "drop key", "drop log",
+            "goto forest", "goto cabin", "goto cellar", "goto riverbank", "goto clearing", "open trapdoor",
+            "chop tree", "drink potion", "pay elf", "hit elf", "bridge river", "dig ground", "blow horn"};
+
+    File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+    File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+    GameServer testServer;
+
+    @BeforeEach
+    void setUpServer() {
+        testServer = new GameServer(entitiesFile, actionsFile);
+    }
+
+    /**
+     * Every player sends random commands from its own thread
+     */
+    void runRandomCommands(int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String player = "player " + (char) ('a' + i);
+            Random random = new Random(i);
+            results.add(pool.submit(() -> {
+                for (int j = 0; j < COMMANDS_PER_THREAD; j++) {
+                    assertNotNull(testServer.handleCommand(player + ": " + COMMANDS[random.nextInt(COMMANDS.length)]));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void testConcurrentCommandsKeepEveryEntityInOnePlace() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> { runRandomCommands(THREADS); },
+                "Concurrent commands did not finish (possible deadlock)");
+
+        Map<String, Integer> seen = new HashMap<>();
+        for (GameEntityLocation location : testServer.gameLocations.values()) {
+            location.getArtefacts().keySet().forEach(name -> seen.merge(name, 1, Integer::sum));
+            location.getFurniture().keySet().forEach(name -> seen.merge(name, 1, Integer::sum));
+            location.getCharacters().forEach((name, character) -> {
+                if (!(character instanceof Player)) { seen.merge(name, 1, Integer::sum); }
+            });
+        }
+        for (Player player : testServer.players.values()) {
+            player.getPlayerInventory().keySet().forEach(name -> seen.merge(name, 1, Integer::sum));
+        }
+        seen.forEach((name, count) -> assertEquals(1, count, name + " is in more than one place"));
+        EntitiesFileTests.assertContainersIndexed(testServer);
+        for (String entity : Arrays.asList("axe", "potion", "coin", "key", "trapdoor", "elf", "horn", "river", "ground")) {
+            assertTrue(seen.containsKey(entity), entity + " went missing");
+        }
+    }
+
+    @Test
+    void testFirstCommandsForSamePlayerCreateOnePlayer() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(pool.submit(() -> testServer.handleCommand("simon: look")));
+        }
+        for (Future<String> result : results) {
+            assertTrue(result.get().contains("cabin"));
+        }
+        pool.shutdown();
+        assertEquals(1, testServer.players.size());
+        assertTrue(testServer.gameLocations.get("cabin").getCharacters().containsKey("simon"));
+    }
+
+    @Test
+    void testLookReadsPublishedViewWithoutLocking() throws Exception {
+        testServer.handleCommand("simon: look");
+        testServer.handleCommand("mia: look");
+        GameEntityLocation cabin = testServer.gameLocations.get("cabin");
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> holding = writer.submit(() -> {
+            cabin.getLock().lock();
+            try {
+                locked.countDown();
+                release.await();
+            } finally {
+                cabin.getLock().unlock();
+            }
+            return null;
+        });
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        //nothing has changed since the last look, so the cabin's lock being held makes no difference
+        String view = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> testServer.handleCommand("mia: look"));
+        assertTrue(view.contains("axe") && view.contains("simon"));
+        release.countDown();
+        holding.get();
+        writer.shutdown();
+    }
+
+    @Test
+    void testReadOnlyCommandsReadPublishedViewsWithoutLocking() throws Exception {
+        testServer.handleCommand("mia: get potion");
+        testServer.handleCommand("mia: look");
+        Player mia = testServer.players.get("mia");
+        GameEntityLocation cabin = testServer.gameLocations.get("cabin");
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> holding = writer.submit(() -> {
+            mia.getLock().lock();
+            cabin.getLock().lock();
+            try {
+                locked.countDown();
+                release.await();
+            } finally {
+                cabin.getLock().unlock();
+                mia.getLock().unlock();
+            }
+            return null;
+        });
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        //a command holding both locks hasn't changed anything yet, so every read-only command is answered around it
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertTrue(testServer.handleCommand("mia: look").startsWith("You are in a: cabin"));
+            assertTrue(testServer.handleCommand("mia: inv").contains("potion"));
+            assertTrue(testServer.handleCommand("mia: inventory").contains("potion"));
+            assertTrue(testServer.handleCommand("mia: health").contains("3"));
+            assertTrue(testServer.handleCommand("mia: route to forest").contains("forest"));
+        });
+        release.countDown();
+        holding.get();
+        writer.shutdown();
+    }
+
+    @Test
+    void testLookSeesWholeChanges() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> results = new ArrayList<>();
+        results.add(pool.submit(() -> {
+            for (int i = 0; i < COMMANDS_PER_THREAD; i++) {
+                testServer.handleCommand("simon: get axe");
+                testServer.handleCommand("simon: drop axe");
+            }
+            return null;
+        }));
+        for (int t = 1; t < THREADS; t++) {
+            String player = "player " + (char) ('a' + t);
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < COMMANDS_PER_THREAD; i++) {
+                    String view = testServer.handleCommand(player + ": look");
+                    assertTrue(view.startsWith("You are in a: cabin"), view);
+                    assertTrue(view.indexOf("\naxe, ") == view.lastIndexOf("\naxe, "), view);
+                    assertTrue(view.contains("potion") && view.contains("trapdoor"), view);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        pool.shutdown();
+        assertTrue(testServer.handleCommand("player b: look").contains("axe"));
+    }
+}
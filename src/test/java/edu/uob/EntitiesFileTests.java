@@ -7,6 +7,13 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.File;
@@ -22,6 +29,8 @@ final class EntitiesFileTests {
 
     File entitiesFile = Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile();
     File actionsFile = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+    File extendedEntitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+    File extendedActionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
     GameServer testServer;
 
   // Test to make sure that the basic entities file is readable
@@ -162,4 +171,213 @@ final class EntitiesFileTests {
       assertTrue(entities.contains("potion"));
   }
 
+
+  /**
+   * The old allEntities list: every name in every location when the game was loaded
+   */
+  static Set<String> entityNamesInWorld(GameServer server) {
+      Set<String> names = new HashSet<>();
+      server.gameLocations.values().forEach(location -> names.addAll(location.getEntitiesList()));
+      server.players.values().forEach(player -> names.addAll(player.getPlayerInventory().keySet()));
+      names.removeAll(server.players.keySet());
+      return names;
+  }
+
+  /**
+   * @return a new server playing the extended game, which has actions and more places to go than the basic one
+   */
+  GameServer extendedServer() {
+      return new GameServer(extendedEntitiesFile, extendedActionsFile);
+  }
+
+  /**
+   * Where the entity is found by searching every location and inventory, as findEntityLocation used to
+   */
+  static GameEntity scanForContainer(GameServer server, String entity) {
+      for (GameEntityLocation location : server.gameLocations.values()) {
+          if (location.getEntitiesList().contains(entity)) { return location; }
+      }
+      for (Player player : server.players.values()) {
+          if (player.checkInventory(entity)) { return player; }
+      }
+      return null;
+  }
+
+  static void assertContainersIndexed(GameServer server) {
+      for (String entity : entityNamesInWorld(server)) {
+          assertSame(scanForContainer(server, entity), server.entityIndex.containerOf(entity), entity);
+          int id = server.entityIndex.idFor(entity);
+          for (GameEntityLocation location : server.gameLocations.values()) {
+              assertEquals(location.getEntitiesList().contains(entity), location.getPresence().contains(id), entity + " in " + location.getName());
+          }
+          for (Player player : server.players.values()) {
+              assertEquals(player.checkInventory(entity), player.getInventoryPresence().contains(id), entity + " held by " + player.getName());
+          }
+      }
+      for (Player player : server.players.values()) {
+          assertSame(scanForContainer(server, player.getName()), server.entityIndex.containerOf(player.getName()), player.getName());
+      }
+      for (GameEntityLocation location : server.gameLocations.values()) {
+          List<String> paths = new ArrayList<>(location.getPaths());
+          List<String> inGraph = server.entityIndex.getLocationGraph().pathsFrom(location.getName());
+          paths.sort(null);
+          inGraph.sort(null);
+          assertEquals(paths, inGraph, "paths from " + location.getName());
+      }
+  }
+
+  @Test
+    void testRouteCommand(){
+      GameServer server = extendedServer();
+      assertEquals("To get to the riverbank go to: forest, riverbank", server.handleCommand("simon: route to riverbank"));
+      assertEquals("You are already in the cabin", server.handleCommand("simon: route to cabin"));
+      assertEquals("There is no way to the cellar from here", server.handleCommand("simon: route to cellar"));
+      assertTrue(server.handleCommand("simon: route to axe").contains("isn't somewhere you can go"));
+      assertTrue(server.handleCommand("simon: route to forest and cellar").contains("one place at a time"));
+      assertTrue(server.handleCommand("simon: route").contains("Where do you want to go"));
+
+      //opening the trapdoor opens the way to the cellar
+      for (String command : Arrays.asList("get axe", "goto forest", "get key", "goto cabin", "open trapdoor")) {
+          server.handleCommand("simon: " + command);
+      }
+      assertEquals("To get to the cellar go to: cellar", server.handleCommand("simon: route to cellar"));
+      server.handleCommand("simon: goto forest");
+      assertEquals("To get to the cellar go to: cabin, cellar", server.handleCommand("simon: route to cellar"));
+      assertContainersIndexed(server);
+  }
+
+  @Test
+    void testLocationGraphOnlyDropsChangedTrees(){
+      //a long one-way chain: location0 -> location1 -> ... -> location19999
+      Map<String, GameEntityLocation> chain = new HashMap<>();
+      int length = 20_000;
+      for (int i = 0; i < length; i++) {
+          GameEntityLocation location = new GameEntityLocation("location" + i, "a generated location");
+          if (i + 1 < length) { location.addPath("location" + (i + 1)); }
+          chain.put(location.getName(), location);
+      }
+      LocationGraph graph = new LocationGraph(chain);
+      assertEquals(length - 1, graph.route("location0", "location" + (length - 1)).size());
+      assertEquals(Arrays.asList("location11", "location12"), graph.route("location10", "location12"));
+      assertNull(graph.route("location12", "location10"));
+      long built = graph.getTreesBuilt();
+      graph.route("location0", "location5");
+      assertEquals(built, graph.getTreesBuilt());
+
+      //a path that makes nothing shorter leaves every tree alone
+      chain.get("location5").addPath("location3");
+      graph.route("location0", "location9");
+      graph.route("location10", "location12");
+      assertEquals(built, graph.getTreesBuilt());
+
+      //a short cut is used straight away, and only the trees that can reach it are searched again
+      chain.get("location1").addPath("location" + (length - 1));
+      assertEquals(Arrays.asList("location1", "location" + (length - 1)), graph.route("location0", "location" + (length - 1)));
+      assertEquals(built + 1, graph.getTreesBuilt());
+      graph.route("location10", "location12");
+      assertEquals(built + 1, graph.getTreesBuilt());
+
+      //closing a path drops the trees that went that way
+      chain.get("location11").removePath("location12");
+      assertNull(graph.route("location10", "location12"));
+      assertEquals(built + 2, graph.getTreesBuilt());
+      chain.get("location11").addPath("location12");
+      assertEquals(Arrays.asList("location11", "location12"), graph.route("location10", "location12"));
+      assertEquals(Arrays.asList("location5", "location3"), graph.route("location4", "location3"));
+      assertThrows(IllegalArgumentException.class, () -> graph.route("location0", "nowhere"));
+  }
+
+  @Test
+    void testLookViewCachedUntilLocationChanges(){
+      testServer.handleCommand("simon: look");
+      testServer.handleCommand("mia: look");
+      GameEntityLocation cabin = testServer.gameLocations.get("cabin");
+      long version = cabin.getVersion();
+      LocationView view = cabin.getView(testServer.gameLocations);
+      String simonSees = testServer.handleCommand("simon: look");
+      String miaSees = testServer.handleCommand("mia: look");
+      //looking neither changes the location nor renders it again, and every player still only sees the others
+      assertEquals(version, cabin.getVersion());
+      assertSame(view, cabin.getView(testServer.gameLocations));
+      assertTrue(simonSees.contains("mia") && !simonSees.contains("simon"));
+      assertTrue(miaSees.contains("simon") && !miaSees.contains("mia"));
+
+      testServer.handleCommand("simon: get axe");
+      assertNotEquals(version, cabin.getVersion());
+      assertNotSame(view, cabin.getView(testServer.gameLocations));
+      assertFalse(testServer.handleCommand("mia: look").contains("axe"));
+      testServer.handleCommand("simon: drop axe");
+      assertTrue(testServer.handleCommand("mia: look").contains("axe"));
+  }
+
+  @Test
+    void testDeadPlayerOnlyInStartingLocation(){
+      GameServer server = extendedServer();
+      for (String command : Arrays.asList("get axe", "goto forest", "get key", "goto cabin", "open trapdoor", "goto cellar")) {
+          server.handleCommand("simon: " + command);
+      }
+      for (int i = 0; i < 3; i++) {
+          server.handleCommand("simon: hit elf");
+      }
+      assertFalse(server.gameLocations.get("cellar").getCharacters().containsKey("simon"));
+      assertTrue(server.gameLocations.get("cabin").getCharacters().containsKey("simon"));
+      assertTrue(server.gameLocations.get("cellar").getArtefacts().containsKey("axe"));
+      assertTrue(server.handleCommand("simon: look").contains("cabin"));
+      assertContainersIndexed(server);
+  }
+
+  @Test
+    void testEntityIndexMatchesEntitiesList(){
+      GameServer server = extendedServer();
+      Set<String> loaded = entityNamesInWorld(server);
+      assertEquals(loaded, server.entityIndex.getEntityNames());
+
+      String[] commands = {"look", "get axe", "get coin", "goto forest", "chop tree", "get log", "get key",
+              "goto cabin", "open trapdoor", "goto cellar", "pay elf", "hit elf", "drop axe", "goto riverbank",
+              "get horn", "blow horn", "bridge river", "goto clearing", "dig ground", "drink potion", "inv"};
+      Random random = new Random(13);
+      for (int i = 0; i < 2000; i++) {
+          server.handleCommand("player " + (char) ('a' + random.nextInt(4)) + ": " + commands[random.nextInt(commands.length)]);
+          //entities move around and get consumed, but the set of names the game knows about never changes
+          assertEquals(loaded, server.entityIndex.getEntityNames());
+          assertContainersIndexed(server);
+      }
+      for (String word : Arrays.asList("axe", "trapdoor", "elf", "cellar", "storeroom", "lumberjack", "player a", "look", "sword")) {
+          assertEquals(loaded.contains(word), server.entityIndex.kindOf(word) != null, word);
+      }
+      assertEquals(EntityIndex.Kind.ARTEFACT, server.entityIndex.kindOf("axe"));
+      assertEquals(EntityIndex.Kind.FURNITURE, server.entityIndex.kindOf("trapdoor"));
+      assertEquals(EntityIndex.Kind.CHARACTER, server.entityIndex.kindOf("elf"));
+      assertEquals(EntityIndex.Kind.LOCATION, server.entityIndex.kindOf("cellar"));
+  }
+
+  @Test
+    void testPlayersJoinEntityIndex(){
+      testServer.handleCommand("simon: look");
+      testServer.handleCommand("simon: get axe");
+      //players are not entities a command can refer to, but what they hold is indexed
+      assertNull(testServer.entityIndex.kindOf("simon"));
+      assertEquals("simon", testServer.entityIndex.containerOf("axe").getName());
+  }
+
+
+  @Test
+    void testEntitySetCoveredBy(){
+      EntitySet subjects = new EntitySet();
+      EntitySet here = new EntitySet();
+      EntitySet inventory = new EntitySet();
+      assertTrue(subjects.coveredBy(here, inventory));
+      subjects.add(3);
+      subjects.add(130);
+      assertFalse(subjects.coveredBy(here, inventory));
+      here.add(3);
+      assertFalse(subjects.coveredBy(here, inventory));
+      inventory.add(130);
+      assertTrue(subjects.coveredBy(here, inventory));
+      //sets of different lengths
+      assertTrue(here.coveredBy(subjects, inventory));
+      inventory.remove(130);
+      assertFalse(subjects.coveredBy(here, inventory));
+      assertTrue(inventory.isEmpty());
+  }
 }
@@ -0,0 +1,100 @@
+package edu.uob;
+
+import edu.uob.Logging.AsyncLogger;
+import edu.uob.Logging.LogLevel;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class LoggingTests {
+
+    File entitiesFile = Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile();
+    File actionsFile = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+
+    @Test
+    void testEventsAreWrittenInOrderWithStructuredFields() {
+        StringWriter out = new StringWriter();
+        AsyncLogger log = new AsyncLogger(out, 16, LogLevel.INFO);
+        log.log(LogLevel.INFO, "server_listening", "blocking on port 8888");
+        log.logCommand(LogLevel.INFO, "simon", "get axe", 12_000, "ok");
+        log.log(LogLevel.DEBUG, "connection_closed", "not logged at INFO");
+        log.close();
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].endsWith("INFO event=server_listening message=\"blocking on port 8888\""));
+        assertTrue(lines[1].endsWith("INFO event=command player=simon command=\"get axe\" latency_us=12 outcome=ok"));
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    @Test
+    void testValuesAreQuotedAndEscaped() {
+        StringWriter out = new StringWriter();
+        AsyncLogger log = new AsyncLogger(out, 4, LogLevel.DEBUG);
+        log.log(LogLevel.WARN, "odd", "say \"hi\"\nback\\slash");
+        log.close();
+        assertTrue(out.toString().contains("message=\"say \\\"hi\\\"\\nback\\\\slash\""), out.toString());
+    }
+
+    @Test
+    void testFullBufferDropsAndCountsInsteadOfBlocking() throws Exception {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StringWriter out = new StringWriter();
+        Writer slowConsole = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) { out.write(buffer, offset, length); }
+
+            @Override
+            public void flush() throws IOException {
+                //the writer flushes while idle too, only block once "first" has been written out
+                if (out.getBuffer().length() == 0) { return; }
+                writerBlocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void close() { }
+        };
+        AsyncLogger log = new AsyncLogger(slowConsole, 4, LogLevel.INFO);
+        log.log(LogLevel.INFO, "first", null);
+        assertTrue(writerBlocked.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            log.log(LogLevel.INFO, "burst", null);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "logging waited for the writer");
+        assertEquals(6, log.getDroppedCount());
+        release.countDown();
+        log.close();
+        assertTrue(out.toString().contains("event=log_dropped count=6"), out.toString());
+        assertEquals(4, out.toString().split("event=burst").length - 1);
+    }
+
+    @Test
+    void testSessionLogsEveryCommandWithOutcome() {
+        StringWriter out = new StringWriter();
+        AsyncLogger log = new AsyncLogger(out, 16, LogLevel.INFO);
+        GameSession session = new GameSession(new GameServer(entitiesFile, actionsFile), log);
+        session.respondTo(GameSession.SESSION_HANDSHAKE + "simon");
+        session.respondTo("get axe");
+        session.respondTo("get unicorn");
+        log.close();
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("player=simon command=\"#session simon\""));
+        assertTrue(lines[1].contains("player=simon command=\"get axe\"") && lines[1].endsWith("outcome=ok"));
+        assertTrue(lines[2].contains("command=\"get unicorn\"") && lines[2].endsWith("outcome=error"));
+    }
+}
@@ -0,0 +1,155 @@
+package edu.uob;
+
+import edu.uob.Metrics.CommandMetrics;
+import edu.uob.Metrics.CommandPhase;
+import edu.uob.Metrics.LatencyHistogram;
+import edu.uob.Metrics.ServerMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class MetricsTests {
+
+    File entitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+    File actionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+    GameServer testServer;
+
+    @BeforeEach
+    void setUpServer() {
+        testServer = new GameServer(entitiesFile, actionsFile);
+    }
+
+    @Test
+    void testHistogramQuantilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000_000, histogram.getValueAtQuantile(0.5), 50_000_000 / 32.0);
+        assertEquals(99_000_000, histogram.getValueAtQuantile(0.99), 99_000_000 / 32.0);
+        assertEquals(99_900_000, histogram.getValueAtQuantile(0.999), 99_900_000 / 32.0);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtQuantile(0.99));
+    }
+
+    @Test
+    void testHistogramAddsUpEveryThreadsStripe() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            long value = (t + 1) * 1000L;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) { histogram.record(value); }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) { thread.join(); }
+        assertEquals(80_000, histogram.getCount());
+        assertEquals(8000, histogram.getValueAtQuantile(1), 8000 / 32.0);
+        assertEquals(1000, histogram.getValueAtQuantile(0.1), 1000 / 32.0);
+
+        LatencyHistogram sum = new LatencyHistogram();
+        sum.add(histogram);
+        sum.add(histogram);
+        assertEquals(160_000, sum.getCount());
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    void testBasicCommandsAreCountedPerCommand() {
+        testServer.handleCommand("simon: look");
+        testServer.handleCommand("simon: look around");
+        testServer.handleCommand("simon: inventory");
+        testServer.handleCommand("simon: get axe");
+        testServer.handleCommand("simon: get unicorn");
+        testServer.handleCommand("simon: get look");
+        ServerMetrics metrics = testServer.getMetrics();
+        assertEquals(2, metrics.forCommand("look").getHits());
+        assertEquals(1, metrics.forCommand("inv").getHits());
+        assertEquals(2, metrics.forCommand("get").getHits());
+        assertEquals(1, metrics.forCommand("get").getErrors(), "getting something that isn't there is an error");
+        assertEquals(1, metrics.getUnknown().getHits(), "two command words can't be resolved to one command");
+        assertEquals(1, metrics.getUnknown().getErrors());
+    }
+
+    @Test
+    void testActionsAreCountedPerTrigger() {
+        testServer.handleCommand("simon: get axe");
+        testServer.handleCommand("simon: goto forest");
+        testServer.handleCommand("simon: cut down tree");
+        testServer.handleCommand("simon: chop tree");
+        testServer.handleCommand("simon: dance wildly");
+        ServerMetrics metrics = testServer.getMetrics();
+        assertEquals(1, metrics.forTrigger("cut down").getHits());
+        assertEquals(0, metrics.forTrigger("cut down").getErrors());
+        assertEquals(0, metrics.forTrigger("cut").getHits(), "the longest trigger is the one recorded");
+        assertEquals(1, metrics.forTrigger("chop").getHits());
+        assertEquals(1, metrics.forTrigger("chop").getErrors(), "the tree has already been cut down");
+        assertEquals(1, metrics.getUnknown().getHits());
+    }
+
+    @Test
+    void testTriggersLoadedLaterAreCounted() throws Exception {
+        GameServer server = new GameServer(Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile(),
+                Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile());
+        server.handleCommand("simon: open trapdoor");
+        CommandMetrics open = server.getMetrics().forTrigger("open");
+        assertEquals(1, open.getHits());
+        server.getActionsFromFile(actionsFile);
+        CommandMetrics pay = server.getMetrics().forTrigger("pay");
+        assertNotSame(server.getMetrics().getUnknown(), pay);
+        server.handleCommand("simon: pay elf");
+        assertEquals(1, pay.getHits());
+        assertEquals(0, server.getMetrics().getUnknown().getHits());
+        assertSame(open, server.getMetrics().forTrigger("open"), "counts for triggers already known are kept");
+    }
+
+    @Test
+    void testEveryPhaseIsTimed() {
+        testServer.handleCommand("simon: get axe");
+        CommandMetrics get = testServer.getMetrics().forCommand("get");
+        for (CommandPhase phase : CommandPhase.values()) {
+            assertEquals(1, get.getPhase(phase).getCount(), phase + " was not recorded");
+        }
+        assertTrue(get.getTotal().getValueAtQuantile(1) >= get.getPhase(CommandPhase.EXECUTE).getValueAtQuantile(1) / 2);
+    }
+
+    @Test
+    void testMetricsAdminCommand() {
+        testServer.handleCommand("simon: look");
+        GameSession session = new GameSession(testServer);
+        String report = session.respondTo(GameSession.METRICS_COMMAND);
+        assertTrue(report.contains("look"));
+        assertTrue(report.contains("p99"));
+        assertFalse(session.isOpen(), "on its own the admin command is a one-shot request");
+
+        GameSession playerSession = new GameSession(testServer);
+        playerSession.respondTo(GameSession.SESSION_HANDSHAKE + "simon");
+        assertTrue(playerSession.respondTo(GameSession.METRICS_COMMAND).contains("look"));
+        assertTrue(playerSession.isOpen());
+        assertEquals(1, testServer.getMetrics().forCommand("look").getHits(), "admin commands are not counted");
+    }
+
+    @Test
+    void testMetricsAreExposedOverJmx() throws Exception {
+        testServer.handleCommand("simon: look");
+        testServer.getMetrics().registerMBeans();
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName look = new ObjectName("edu.uob:type=CommandMetrics,kind=basic,name=\"look\"");
+        assertEquals(1L, mBeanServer.getAttribute(look, "Hits"));
+        ObjectName cutDown = new ObjectName("edu.uob:type=CommandMetrics,kind=action,name=\"cut down\"");
+        assertEquals(0L, mBeanServer.getAttribute(cutDown, "Errors"));
+        mBeanServer.invoke(new ObjectName("edu.uob:type=ServerMetrics"), "reset", null, null);
+        assertEquals(0L, mBeanServer.getAttribute(look, "Hits"));
+    }
+}
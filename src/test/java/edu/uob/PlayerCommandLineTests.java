@@ -0,0 +1,67 @@
+package edu.uob;
+
+import edu.uob.Actions.TokenisedCommand;
+import edu.uob.Actions.Vocabulary;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class PlayerCommandLineTests {
+
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z\\s '-]+$");
+    private static final String[] PIECES = {"simon", "Mia", "O'Neil", "anne-marie", "look", "LOOK", "Axe", "inv", ":",
+            "::", " ", "  ", "\t", "\r", "\u0001", "\u001f", "7", "_", "é", "ÀXE", "get", "cabin", "K", "İnv"};
+
+    Vocabulary vocabulary = new Vocabulary(Arrays.asList("look", "get", "inv", "inventory"),
+            Arrays.asList("axe", "cabin", "forest", "trapdoor", "àxe"), Arrays.asList("open", "unlock", "cut", "down"));
+
+    @Test
+    void testParsingMatchesSplitTrimAndRegex() {
+        Random random = new Random(18);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = random.nextInt(8); j > 0; j--) {
+                builder.append(PIECES[random.nextInt(PIECES.length)]);
+                if (random.nextBoolean()) { builder.append(' '); }
+            }
+            String line = builder.toString();
+            PlayerCommandLine parsed = PlayerCommandLine.parse(line);
+
+            //what GameServer.handleCommand used to do
+            assertEquals(line.contains(":"), parsed.hasSeparator(), line);
+            if (!line.contains(":")) { continue; }
+            String[] parts = line.split(":", 2);
+            String name = parts[0].trim();
+            assertEquals(name, line.substring(parsed.getNameStart(), parsed.getNameEnd()), line);
+            assertEquals(NAME.matcher(name).matches(), parsed.hasValidName(), line);
+
+            String command = parts[1].trim().toLowerCase();
+            assertEquals(parts[1].trim(), line.substring(parsed.getCommandStart(), parsed.getCommandEnd()), line);
+            TokenisedCommand expected = vocabulary.tokenise(command);
+            TokenisedCommand actual = vocabulary.tokeniseLowerCase(line, parsed.getCommandStart(), parsed.getCommandEnd());
+            assertEquals(expected.size(), actual.size(), line);
+            for (int t = 0; t < expected.size(); t++) {
+                assertEquals(expected.id(t), actual.id(t), line);
+            }
+        }
+    }
+
+    @Test
+    void testPlayerNamesAreCheckedAsBefore() {
+        File entitiesFile = Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile();
+        File actionsFile = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+        GameServer server = new GameServer(entitiesFile, actionsFile);
+        assertEquals("Error: Invalid player name!", server.handleCommand("simon look"));
+        assertTrue(server.handleCommand("  LOOK : look").contains("reserved word"));
+        assertTrue(server.handleCommand("simon7: look").contains("simon7 is an invalid player name"));
+        assertTrue(server.handleCommand(": look").contains("is an invalid player name"));
+        assertTrue(server.handleCommand("  Anne-Marie O'Neil :  LoOk  ").contains("cabin"));
+        assertTrue(server.players.containsKey("Anne-Marie O'Neil"));
+        assertTrue(server.handleCommand("simon: GET AXE").contains("axe"));
+    }
+}
@@ -0,0 +1,758 @@
+package edu.uob;
+
+import edu.uob.Entities.GameEntityLocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class ServerModesTests {
+
+    private static final char END_OF_TRANSMISSION = 4;
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS_PER_CLIENT = 200;
+
+    File entitiesFile = Paths.get("config" + File.separator + "basic-entities.dot").toAbsolutePath().toFile();
+    File actionsFile = Paths.get("config" + File.separator + "basic-actions.xml").toAbsolutePath().toFile();
+    File extendedEntitiesFile = Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile();
+    File extendedActionsFile = Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile();
+    GameServer testServer;
+
+    @BeforeEach
+    void setUpServer() {
+        testServer = new GameServer(entitiesFile, actionsFile);
+    }
+
+    /**
+     * @return a new server playing the extended game, which has actions and more places to go than the basic one
+     */
+    GameServer extendedServer() {
+        return new GameServer(extendedEntitiesFile, extendedActionsFile);
+    }
+
+    interface Listener {
+        void listenOn(int port) throws IOException;
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static int startInBackground(Listener listener) throws Exception {
+        int port = freePort();
+        Thread thread = new Thread(() -> {
+            try {
+                listener.listenOn(port);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        //wait until the server is accepting connections
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                new Socket("localhost", port).close();
+                return port;
+            } catch (IOException e) {
+                Thread.sleep(20);
+            }
+        }
+        fail("Server did not start listening on port " + port);
+        return port;
+    }
+
+    static String sendOverSocket(int port, String command) throws IOException {
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write(command + "\n");
+            writer.flush();
+            return readResponse(reader);
+        }
+    }
+
+    static String readResponse(BufferedReader reader) throws IOException {
+        StringBuilder response = new StringBuilder();
+        String line = reader.readLine();
+        while (line != null && !line.contains("" + END_OF_TRANSMISSION)) {
+            response.append(line).append("\n");
+            line = reader.readLine();
+        }
+        assertNotNull(line, "Server closed the connection before the end of transmission marker");
+        return response.toString();
+    }
+
+    void checkSessionKeepsConnectionOpen(int port) throws IOException {
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write(GameSession.SESSION_HANDSHAKE + "simon\n");
+            writer.flush();
+            assertTrue(readResponse(reader).contains("simon"));
+            //commands no longer carry the player name
+            String[] commands = {"get axe", "inv", "goto forest", "look"};
+            String[] expected = {"added the axe", "axe", "forest", "key"};
+            for (int i = 0; i < commands.length; i++) {
+                writer.write(commands[i] + "\n");
+                writer.flush();
+                assertTrue(readResponse(reader).contains(expected[i]));
+            }
+        }
+        //old one-shot connections are still served alongside sessions
+        assertTrue(sendOverSocket(port, "mia: look").contains("cabin"));
+        assertFalse(sendOverSocket(port, "mia: look").contains("axe"));
+    }
+
+    /**
+     * Runs CLIENTS threads at once, each sending REQUESTS_PER_CLIENT one-shot look commands as its own player,
+     * and checks every response
+     */
+    static void sendLooksFromManyClients(int port) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            String player = "player " + (char) ('a' + i);
+            results.add(clients.submit(() -> {
+                for (int j = 0; j < REQUESTS_PER_CLIENT; j++) {
+                    assertTrue(sendOverSocket(port, player + ": look").contains("You are in a"));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        clients.shutdown();
+    }
+
+    @Test
+    void testNonBlockingServesSameResponses() throws Exception {
+        int port = startInBackground(testServer::nonBlockingListenOn);
+        String response = sendOverSocket(port, "simon: look");
+        assertTrue(response.contains("log cabin"));
+        assertTrue(sendOverSocket(port, "simon: get axe").contains("axe"));
+        assertTrue(sendOverSocket(port, "simon: inv").contains("axe"));
+        assertTrue(sendOverSocket(port, "s1mon: look").contains("invalid player name"));
+    }
+
+    @Test
+    void testSlowClientDoesNotStallOthers() throws Exception {
+        int port = startInBackground(testServer::nonBlockingListenOn);
+        //open a connection that never sends its command
+        try (Socket idle = new Socket("localhost", port)) {
+            assertTimeoutPreemptively(Duration.ofMillis(1000), () -> {
+                assertTrue(sendOverSocket(port, "simon: look").contains("cabin"));
+            }, "Idle connection stalled the non-blocking server");
+            assertTrue(idle.isConnected());
+        }
+    }
+
+    void checkPipelinedResponsesComeBackInOrder(int port) throws IOException {
+        String[] commands = {"simon: get axe", "mia: get potion", "simon: goto forest", "simon: chop tree",
+                "mia: inv", "simon: look", "s1mon: look", "mia: drop potion", "simon: inv"};
+        String[] expected = {"added the axe", "added the potion", "forest", "cut down", "potion", "log",
+                "invalid player name", "dropped", "axe"};
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            //send the whole batch before reading anything back
+            writer.write(GameSession.PIPELINE_HANDSHAKE + "\n");
+            for (String command : commands) {
+                writer.write(command + "\n");
+            }
+            writer.flush();
+            assertTrue(readResponse(reader).contains("Pipeline"));
+            for (int i = 0; i < commands.length; i++) {
+                assertTrue(readResponse(reader).contains(expected[i]), "Unexpected response to " + commands[i]);
+            }
+        }
+    }
+
+    @Test
+    void testBlockingPipeline() throws Exception {
+        checkPipelinedResponsesComeBackInOrder(startInBackground(testServer::blockingListenOn));
+    }
+
+    @Test
+    void testBlockingPipelineFlushesBeforePartialLine() throws Exception {
+        int port = startInBackground(testServer::blockingListenOn);
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            //the client only finishes its next line once the look has been answered
+            writer.write(GameSession.PIPELINE_HANDSHAKE + "\nsimon: look\nsimon: in");
+            writer.flush();
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals("Pipeline started\n", readResponse(reader));
+                assertTrue(readResponse(reader).contains("cabin"));
+            });
+            writer.write("v\n");
+            writer.flush();
+            assertTrue(readResponse(reader).contains("inventory is empty"));
+        }
+    }
+
+    @Test
+    void testOutcomesAreSentWithTheEndOfTransmission() throws Exception {
+        int port = startInBackground(testServer::nonBlockingListenOn);
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write(GameSession.OUTCOMES_COMMAND + "\n" + GameSession.SESSION_HANDSHAKE + "simon\nget unicorn\nget axe\n");
+            writer.flush();
+            String[] expected = {"ok", "ok", "error", "ok"};
+            for (String outcome : expected) {
+                String line = reader.readLine();
+                while (!line.contains("" + END_OF_TRANSMISSION)) { line = reader.readLine(); }
+                //a failed game command doesn't have to say "Error", the outcome tells the client it failed
+                assertEquals(END_OF_TRANSMISSION + outcome, line);
+            }
+        }
+        //without asking for outcomes the framing is as before
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write("simon: get unicorn\n");
+            writer.flush();
+            assertFalse(reader.readLine().startsWith("Error"));
+            assertEquals("" + END_OF_TRANSMISSION, reader.readLine());
+        }
+    }
+
+    @Test
+    void testNonBlockingPipeline() throws Exception {
+        checkPipelinedResponsesComeBackInOrder(startInBackground(testServer::nonBlockingListenOn));
+    }
+
+    @Test
+    void testBlockingSession() throws Exception {
+        checkSessionKeepsConnectionOpen(startInBackground(testServer::blockingListenOn));
+    }
+
+    @Test
+    void testBlockingServesOneShotsWhileSessionIsIdle() throws Exception {
+        int port = startInBackground(testServer::blockingListenOn);
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write(GameSession.SESSION_HANDSHAKE + "simon\n");
+            writer.flush();
+            assertTrue(readResponse(reader).contains("simon"));
+            //the session stays open and idle while another client is answered
+            String view = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> sendOverSocket(port, "mia: look"));
+            assertTrue(view.contains("simon"), view);
+            writer.write("look\n");
+            writer.flush();
+            assertTrue(readResponse(reader).contains("mia"));
+        }
+    }
+
+    @Test
+    void testNonBlockingSession() throws Exception {
+        checkSessionKeepsConnectionOpen(startInBackground(testServer::nonBlockingListenOn));
+    }
+
+    @Test
+    void testDeltaLooksOnlyShowChanges() {
+        GameSession session = new GameSession(testServer);
+        session.respondTo(GameSession.SESSION_HANDSHAKE + "simon");
+        assertEquals("Delta looks on", session.respondTo(GameSession.DELTA_LOOK_COMMAND + "on"));
+        assertTrue(session.respondTo("look").startsWith("You are in a: cabin"));
+        assertEquals("You are still in: cabin\nNothing has changed since you last looked\n", session.respondTo("look"));
+
+        testServer.handleCommand("mia: get axe");
+        assertEquals("You are still in: cabin\nItems removed:\naxe, a razor sharp axe\n"
+                + "Characters arrived:\nmia, A friendly player\n", session.respondTo("look"));
+        testServer.handleCommand("mia: goto forest");
+        assertEquals("You are still in: cabin\nCharacters left:\nmia, A friendly player\n", session.respondTo("look"));
+        //the view seen before going somewhere else is never used as the base of a delta
+        session.respondTo("goto forest");
+        assertTrue(session.respondTo("look").startsWith("You are in a: forest"));
+
+        //a view that has fallen too far behind has expired
+        for (int i = 0; i < 40; i++) {
+            testServer.handleCommand("mia: drop axe");
+            testServer.handleCommand("mia: get axe");
+        }
+        assertTrue(session.respondTo("look").startsWith("You are in a: forest"));
+        assertTrue(session.respondTo("look").startsWith("You are still in: forest"));
+
+        assertEquals("Delta looks off", session.respondTo(GameSession.DELTA_LOOK_COMMAND + "off"));
+        assertTrue(session.respondTo("look").startsWith("You are in a: forest"));
+    }
+
+    @Test
+    void testDeltaLooksOnlyAffectTheirOwnSession() {
+        GameSession deltas = new GameSession(testServer);
+        deltas.respondTo(GameSession.SESSION_HANDSHAKE + "simon");
+        deltas.respondTo(GameSession.DELTA_LOOK_COMMAND + "on");
+        GameSession other = new GameSession(testServer);
+        other.respondTo(GameSession.SESSION_HANDSHAKE + "simon");
+        assertTrue(deltas.respondTo("look").startsWith("You are in a: cabin"));
+
+        //a one-shot client and a second session for the same player still get full views
+        assertTrue(testServer.handleCommand("simon: look").startsWith("You are in a: cabin"));
+        assertTrue(other.respondTo("look").startsWith("You are in a: cabin"));
+        other.respondTo(GameSession.DELTA_LOOK_COMMAND + "on");
+        assertTrue(other.respondTo("look").startsWith("You are in a: cabin"));
+        //and their looks don't move on the view the first session compares against
+        testServer.handleCommand("mia: look");
+        assertTrue(other.respondTo("look").startsWith("You are still in: cabin\nCharacters arrived:\nmia"));
+        assertTrue(deltas.respondTo("look").startsWith("You are still in: cabin\nCharacters arrived:\nmia"));
+        other.respondTo(GameSession.DELTA_LOOK_COMMAND + "off");
+        assertEquals("You are still in: cabin\nNothing has changed since you last looked\n", deltas.respondTo("look"));
+    }
+
+    @Test
+    void testDeltaLooksNeedASession() {
+        GameSession session = new GameSession(testServer);
+        assertTrue(session.respondTo(GameSession.DELTA_LOOK_COMMAND + "on").startsWith("Error"));
+        assertFalse(session.isOpen());
+        session = new GameSession(testServer);
+        session.respondTo(GameSession.SESSION_HANDSHAKE + "simon");
+        assertTrue(session.respondTo(GameSession.DELTA_LOOK_COMMAND + "sometimes").startsWith("Error"));
+        assertTrue(session.isOpen());
+    }
+
+    @Test
+    void testSessionsInRoomsPlayIndependentWorlds() {
+        GameSession castle = new GameSession(testServer);
+        assertEquals("Session started for simon in room castle", castle.respondTo(GameSession.SESSION_HANDSHAKE + "simon@castle"));
+        castle.respondTo("get axe");
+        assertTrue(castle.respondTo("inv").contains("axe"));
+
+        //the same player name in the default room and in another room are different players in different worlds
+        assertTrue(testServer.handleCommand("simon: look").contains("axe"));
+        GameSession tower = new GameSession(testServer);
+        tower.respondTo(GameSession.SESSION_HANDSHAKE + "simon@tower");
+        assertTrue(tower.respondTo("look").contains("axe"));
+        GameSession castleAgain = new GameSession(testServer);
+        castleAgain.respondTo(GameSession.SESSION_HANDSHAKE + "mia@castle");
+        assertFalse(castleAgain.respondTo("look").contains("axe"));
+        assertTrue(castleAgain.respondTo("look").contains("simon"));
+
+        GameRooms rooms = testServer.getRooms();
+        assertEquals(2, rooms.getRoomCount());
+        GameServer room = rooms.getRoom("castle");
+        assertSame(rooms.getRoom("tower").gameActionMap, room.gameActionMap);
+        assertSame(testServer.getMetrics(), room.getMetrics());
+        String report = castle.respondTo(GameSession.ROOMS_COMMAND);
+        assertTrue(report.contains("castle") && report.contains("tower") && report.contains("total (3 rooms)"), report);
+    }
+
+    @Test
+    void testRoomsAreLimitedAndNamed() {
+        GameRooms rooms = new GameRooms(testServer, new GameServer(entitiesFile, actionsFile), 1);
+        GameServer castle = rooms.joinRoom("castle");
+        assertSame(castle, rooms.joinRoom("castle"));
+        assertSame(castle, rooms.getRoom("castle"));
+        assertThrows(IllegalArgumentException.class, () -> rooms.joinRoom("tower"));
+        assertThrows(IllegalArgumentException.class, () -> rooms.joinRoom("no room"));
+
+        long empty = GameRooms.estimatedBytes(castle);
+        castle.handleCommand("simon: get axe");
+        assertTrue(GameRooms.estimatedBytes(castle) > empty);
+
+        GameSession session = new GameSession(testServer);
+        assertTrue(session.respondTo(GameSession.SESSION_HANDSHAKE + "simon@no-room").contains("invalid room name"));
+        assertFalse(session.isOpen());
+    }
+
+    @Test
+    void testRoomsCloseWhenTheirLastSessionLeaves() throws Exception {
+        GameRooms rooms = testServer.getRooms();
+        GameSession simon = new GameSession(testServer);
+        simon.respondTo(GameSession.SESSION_HANDSHAKE + "simon@castle");
+        GameSession mia = new GameSession(testServer);
+        mia.respondTo(GameSession.SESSION_HANDSHAKE + "mia@castle");
+        simon.respondTo("get axe");
+        simon.close();
+        assertTrue(mia.respondTo("look").contains("simon"));
+        mia.close();
+        assertEquals(0, rooms.getRoomCount());
+        //a session that fails to start doesn't keep the room open either
+        assertFalse(new GameSession(testServer).respondTo(GameSession.SESSION_HANDSHAKE + "look@castle").startsWith("Session"));
+        assertEquals(0, rooms.getRoomCount());
+        //the next session in the room finds a fresh world
+        GameSession again = new GameSession(testServer);
+        again.respondTo(GameSession.SESSION_HANDSHAKE + "simon@castle");
+        assertTrue(again.respondTo("look").contains("axe"));
+        again.close();
+
+        //disconnecting closes the room too, so a client can't use up the rooms by naming them
+        int port = startInBackground(testServer::nonBlockingListenOn);
+        for (int i = 0; i < 20; i++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                writer.write(GameSession.SESSION_HANDSHAKE + "simon@room" + i + "\n");
+                writer.flush();
+                assertTrue(readResponse(reader).contains("room" + i));
+            }
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (rooms.getRoomCount() > 0 && System.nanoTime() < deadline) { Thread.sleep(10); }
+        assertEquals(0, rooms.getRoomCount());
+    }
+
+    @Test
+    void testForkSharesUntilChangedThenMerges() {
+        GameServer server = extendedServer();
+        server.handleCommand("simon: look");
+        GameServer fork = server.fork(null);
+        assertSame(server.gameActionMap, fork.gameActionMap);
+        assertSame(server.commandHandler.getDispatch(), fork.commandHandler.getDispatch());
+        assertSame(server.gameLocations.get("cabin").getArtefacts(), fork.gameLocations.get("cabin").getArtefacts());
+        assertFalse(fork.gameLocations.get("cabin").getCharacters().containsKey("simon"));
+
+        //only the locations the fork changes stop being shared, and the parent doesn't see the changes
+        fork.handleCommand("mia: get axe");
+        assertNotSame(server.gameLocations.get("cabin").getArtefacts(), fork.gameLocations.get("cabin").getArtefacts());
+        assertSame(server.gameLocations.get("forest").getArtefacts(), fork.gameLocations.get("forest").getArtefacts());
+        assertTrue(server.handleCommand("simon: look").contains("axe"));
+        for (String command : Arrays.asList("goto forest", "get key", "goto cabin", "open trapdoor")) {
+            fork.handleCommand("mia: " + command);
+        }
+        assertEquals("There is no way to the cellar from here", server.handleCommand("simon: route to cellar"));
+        assertTrue(server.gameLocations.get("forest").getArtefacts().containsKey("key"));
+        EntitiesFileTests.assertContainersIndexed(fork);
+        EntitiesFileTests.assertContainersIndexed(server);
+
+        //merging brings the changes back, with what mia holds dropped where she stands
+        server.merge(fork);
+        assertEquals("To get to the cellar go to: cellar", server.handleCommand("simon: route to cellar"));
+        assertTrue(server.gameLocations.get("cabin").getArtefacts().containsKey("axe"));
+        assertFalse(server.gameLocations.get("forest").getArtefacts().containsKey("key"));
+        assertTrue(server.gameLocations.get("cabin").getCharacters().containsKey("simon"));
+        assertFalse(server.gameLocations.get("cabin").getCharacters().containsKey("mia"));
+        assertFalse(server.players.containsKey("mia"));
+        EntitiesFileTests.assertContainersIndexed(server);
+        assertThrows(IllegalArgumentException.class, () -> fork.merge(server));
+    }
+
+    @Test
+    void testForkMergeConflictsAndDiscards() {
+        GameServer server = extendedServer();
+        server.handleCommand("simon: look");
+        GameServer conflicting = server.fork(null);
+        conflicting.handleCommand("mia: get axe");
+        server.handleCommand("simon: get coin");
+        String error = assertThrows(IllegalArgumentException.class, () -> server.merge(conflicting)).getMessage();
+        assertTrue(error.contains("cabin"), error);
+        assertTrue(server.gameLocations.get("cabin").getArtefacts().containsKey("axe"));
+        //a refused merge leaves the fork as it was too
+        assertTrue(conflicting.handleCommand("mia: inv").contains("axe"));
+
+        //dropping what a fork's player holds would change where they stand, so that conflicts as well
+        GameServer dropping = server.fork(null);
+        for (String command : Arrays.asList("goto forest", "get key", "goto cabin")) {
+            dropping.handleCommand("mia: " + command);
+        }
+        server.handleCommand("simon: drop coin");
+        error = assertThrows(IllegalArgumentException.class, () -> server.merge(dropping)).getMessage();
+        assertTrue(error.contains("cabin"), error);
+        assertTrue(dropping.handleCommand("mia: inv").contains("key"));
+        assertTrue(server.gameLocations.get("forest").getArtefacts().containsKey("key"));
+
+        //players coming and going aren't changes to merge or conflict with
+        GameServer fork = server.fork(null);
+        for (String command : Arrays.asList("goto forest", "get key", "goto cabin")) {
+            fork.handleCommand("mia: " + command);
+        }
+        server.handleCommand("simon: goto forest");
+        server.handleCommand("simon: goto cabin");
+        server.merge(fork);
+        assertTrue(server.gameLocations.get("cabin").getArtefacts().containsKey("key"));
+        EntitiesFileTests.assertContainersIndexed(server);
+    }
+
+    @Test
+    void testForkedRoomsAreMergedOrClosed() {
+        GameServer server = extendedServer();
+        server.handleCommand("simon: look");
+        //a forked room starts where it's asked to and is merged or discarded when the party is done
+        GameRooms rooms = new GameRooms(server, extendedServer(), 10);
+        GameServer party = rooms.openFork("party", "forest");
+        assertTrue(party.handleCommand("mia: look").contains("You are in a: forest"));
+        assertThrows(IllegalArgumentException.class, () -> rooms.openFork("party", null));
+        assertThrows(IllegalArgumentException.class, () -> rooms.openFork("nowhere", "attic"));
+        party.handleCommand("mia: goto riverbank");
+        party.handleCommand("mia: get horn");
+        rooms.mergeRoom("party");
+        assertEquals(0, rooms.getRoomCount());
+        assertTrue(server.gameLocations.get("riverbank").getArtefacts().containsKey("horn"));
+        GameServer lost = rooms.openFork("lost", null);
+        lost.handleCommand("mia: get potion");
+        lost.handleCommand("mia: goto forest");
+        rooms.closeRoom("lost");
+        assertTrue(server.gameLocations.get("cabin").getArtefacts().containsKey("potion"));
+        assertThrows(IllegalArgumentException.class, () -> rooms.mergeRoom("lost"));
+    }
+
+    @Test
+    void testAdminCommandsForkMergeAndCloseRooms() {
+        testServer.setAdminToken("s3cret");
+        testServer.handleCommand("simon: look");
+        GameSession admin = new GameSession(testServer);
+        assertEquals("Admin commands on", admin.respondTo(GameSession.ADMIN_HANDSHAKE + "s3cret"));
+        assertTrue(admin.isOpen());
+        assertEquals("Room party forked", admin.respondTo(GameSession.FORK_COMMAND + "party forest"));
+        assertFalse(admin.isOpen());
+        GameSession party = new GameSession(testServer);
+        party.respondTo(GameSession.SESSION_HANDSHAKE + "mia@party");
+        assertTrue(party.respondTo("look").startsWith("You are in a: forest"));
+        party.respondTo("get key");
+        party.respondTo("goto cabin");
+        //a fork can't be merged or closed from under the sessions playing in it
+        assertTrue(adminSession().respondTo(GameSession.MERGE_COMMAND + "party").contains("still playing"));
+        assertTrue(adminSession().respondTo(GameSession.CLOSE_COMMAND + "party").contains("still playing"));
+        //a fork isn't closed when its last session leaves, it waits to be merged or closed
+        party.close();
+        assertEquals(1, testServer.getRooms().getRoomCount());
+        testServer.handleCommand("simon: goto forest");
+        assertTrue(testServer.handleCommand("simon: look").contains("key"));
+
+        assertEquals("Room party merged", adminSession().respondTo(GameSession.MERGE_COMMAND + "party"));
+        assertEquals(0, testServer.getRooms().getRoomCount());
+        assertFalse(testServer.handleCommand("simon: look").contains("key"));
+        testServer.handleCommand("simon: goto cabin");
+        assertTrue(testServer.handleCommand("simon: look").contains("key"));
+
+        GameSession pipeline = adminSession();
+        pipeline.respondTo(GameSession.PIPELINE_HANDSHAKE);
+        assertEquals("Room lost forked", pipeline.respondTo(GameSession.FORK_COMMAND + "lost"));
+        assertEquals("Room lost closed", pipeline.respondTo(GameSession.CLOSE_COMMAND + "lost"));
+        assertTrue(pipeline.respondTo(GameSession.CLOSE_COMMAND + "lost").startsWith("Error"));
+        assertTrue(pipeline.respondTo(GameSession.MERGE_COMMAND + "lost").startsWith("Error"));
+        assertTrue(pipeline.respondTo(GameSession.FORK_COMMAND + "lost attic").startsWith("Error"));
+        assertTrue(pipeline.respondTo(GameSession.FORK_COMMAND + "lost forest cabin").startsWith("Error"));
+        assertTrue(pipeline.isOpen());
+        assertEquals(0, testServer.getRooms().getRoomCount());
+
+        //forks are capped well below the rooms, since each one locks the whole host world while it is copied
+        for (int i = 0; i < GameRooms.DEFAULT_MAX_FORKS; i++) {
+            assertEquals("Room fork" + i + " forked", pipeline.respondTo(GameSession.FORK_COMMAND + "fork" + i));
+        }
+        assertTrue(pipeline.respondTo(GameSession.FORK_COMMAND + "onemore").contains("no more forks"));
+        assertEquals("Room fork0 closed", pipeline.respondTo(GameSession.CLOSE_COMMAND + "fork0"));
+        assertEquals("Room onemore forked", pipeline.respondTo(GameSession.FORK_COMMAND + "onemore"));
+    }
+
+    @Test
+    void testForkIsMergedOnceWhileMergesAndClosesRace() throws Exception {
+        testServer.handleCommand("simon: look");
+        GameRooms rooms = testServer.getRooms();
+        GameServer party = rooms.openFork("party", null);
+        for (String command : List.of("get axe", "goto forest", "drop axe")) {
+            party.handleCommand("mia: " + command);
+        }
+        GameEntityLocation cabin = testServer.gameLocations.get("cabin");
+        ExecutorService merger = Executors.newSingleThreadExecutor();
+        Future<?> merging;
+        cabin.getLock().lock();
+        try {
+            merging = merger.submit(() -> rooms.mergeRoom("party"));
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (!cabin.getLock().hasQueuedThreads() && System.nanoTime() < deadline) { Thread.sleep(1); }
+            assertTrue(cabin.getLock().hasQueuedThreads());
+            //the merge has marked the room before it started, so nobody else can merge, close or join it meanwhile
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertTrue(assertThrows(IllegalArgumentException.class, () -> rooms.mergeRoom("party")).getMessage().contains("being merged"));
+                assertTrue(assertThrows(IllegalArgumentException.class, () -> rooms.closeRoom("party")).getMessage().contains("being merged"));
+                assertTrue(assertThrows(IllegalArgumentException.class, () -> rooms.joinRoom("party")).getMessage().contains("being merged"));
+            });
+        } finally {
+            cabin.getLock().unlock();
+        }
+        merging.get(5, TimeUnit.SECONDS);
+        merger.shutdown();
+        assertEquals(0, rooms.getRoomCount());
+        assertFalse(testServer.gameLocations.get("cabin").getArtefacts().containsKey("axe"));
+        assertTrue(testServer.gameLocations.get("forest").getArtefacts().containsKey("axe"));
+
+        //a conflicting merge leaves the room open to be merged again or closed
+        GameServer conflicting = rooms.openFork("conflicting", null);
+        conflicting.handleCommand("mia: get potion");
+        testServer.handleCommand("simon: get potion");
+        assertThrows(IllegalArgumentException.class, () -> rooms.mergeRoom("conflicting"));
+        assertEquals(1, rooms.getRoomCount());
+        rooms.closeRoom("conflicting");
+        assertEquals(0, rooms.getRoomCount());
+    }
+
+    @Test
+    void testRoomAdminCommandsNeedTheAdminToken() {
+        GameSession anonymous = new GameSession(testServer);
+        anonymous.respondTo(GameSession.PIPELINE_HANDSHAKE);
+        for (String command : List.of(GameSession.FORK_COMMAND + "party", GameSession.MERGE_COMMAND + "party",
+                GameSession.CLOSE_COMMAND + "party")) {
+            assertTrue(anonymous.respondTo(command).contains("only answered after #admin"), command);
+        }
+        assertEquals(0, testServer.getRooms().getRoomCount());
+        //with no token set nothing unlocks them, and a wrong token ends the connection
+        GameSession guessing = new GameSession(testServer);
+        assertEquals("Error: wrong admin token", guessing.respondTo(GameSession.ADMIN_HANDSHAKE + "s3cret"));
+        assertFalse(guessing.isOpen());
+        testServer.setAdminToken("s3cret");
+        guessing = new GameSession(testServer);
+        assertEquals("Error: wrong admin token", guessing.respondTo(GameSession.ADMIN_HANDSHAKE + "secret"));
+        assertFalse(guessing.isOpen());
+        assertTrue(guessing.respondTo(GameSession.FORK_COMMAND + "party").startsWith("Error"));
+        assertEquals(0, testServer.getRooms().getRoomCount());
+    }
+
+    /**
+     * @return a session that has unlocked the room admin commands
+     */
+    private GameSession adminSession() {
+        GameSession session = new GameSession(testServer);
+        session.respondTo(GameSession.ADMIN_HANDSHAKE + "s3cret");
+        return session;
+    }
+
+    @Test
+    void testSessionRejectsInvalidName() throws Exception {
+        int port = startInBackground(testServer::nonBlockingListenOn);
+        assertTrue(sendOverSocket(port, GameSession.SESSION_HANDSHAKE + "look").contains("reserved word"));
+        assertFalse(testServer.players.containsKey("look"));
+    }
+
+    @Test
+    void testThreadPerConnectionSessionAndPipeline() throws Exception {
+        ThreadPerConnectionListener listener = new ThreadPerConnectionListener(testServer, 100);
+        checkSessionKeepsConnectionOpen(startInBackground(listener::listenOn));
+        listener.shutdown(Duration.ofMillis(500));
+        ThreadPerConnectionListener pipelineListener = new ThreadPerConnectionListener(new GameServer(entitiesFile, actionsFile), 100);
+        checkPipelinedResponsesComeBackInOrder(startInBackground(pipelineListener::listenOn));
+        pipelineListener.shutdown(Duration.ofMillis(500));
+    }
+
+    static void waitForSessionsToClose(ThreadPerConnectionListener listener) {
+        assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+            while (listener.getOpenSessions() > 0) { Thread.sleep(10); }
+        });
+    }
+
+    @Test
+    void testThreadPerConnectionCapsSessions() throws Exception {
+        ThreadPerConnectionListener listener = new ThreadPerConnectionListener(testServer, 1);
+        int port = startInBackground(listener::listenOn);
+        waitForSessionsToClose(listener);
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write(GameSession.SESSION_HANDSHAKE + "simon\n");
+            writer.flush();
+            readResponse(reader);
+            //the only permit is taken by simon's session
+            assertTrue(sendOverSocket(port, "mia: look").contains("server is full"));
+        }
+        //once the session ends its permit is handed back
+        waitForSessionsToClose(listener);
+        assertTrue(sendOverSocket(port, "mia: look").contains("cabin"));
+        listener.shutdown(Duration.ofMillis(500));
+    }
+
+    @Test
+    void testThreadPerConnectionShutdownClosesIdleSessions() throws Exception {
+        ThreadPerConnectionListener listener = new ThreadPerConnectionListener(testServer, 100);
+        int port = startInBackground(listener::listenOn);
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            writer.write(GameSession.SESSION_HANDSHAKE + "simon\n");
+            writer.flush();
+            readResponse(reader);
+            assertTimeoutPreemptively(Duration.ofMillis(2000), () -> listener.shutdown(Duration.ofMillis(200)));
+            //the idle session has been closed by the server
+            assertNull(reader.readLine());
+        }
+        assertThrows(IOException.class, () -> new Socket("localhost", port).close());
+    }
+
+    @Test
+    void testLoadGeneratorReportsEveryCommandType() throws Exception {
+        GameServer extendedServer = extendedServer();
+        int port = startInBackground(extendedServer::nonBlockingListenOn);
+        LoadGenerator generator = new LoadGenerator("localhost", port, 4, Duration.ofMillis(200), Duration.ofMillis(800), true);
+        Map<String, LoadGenerator.CommandStats> stats = generator.run();
+        String report = generator.report();
+        assertTrue(stats.containsKey("look"));
+        assertTrue(stats.containsKey("goto"));
+        assertTrue(stats.get("look").getCount() > 0);
+        assertEquals(0, stats.get("look").getErrors());
+        assertTrue(report.contains("p999"));
+        assertEquals("bot a", LoadGenerator.botName(0));
+        assertEquals("bot ba", LoadGenerator.botName(26));
+    }
+
+    @Test
+    void testBothListenersServeManyClientsAtOnce() throws Exception {
+        GameServer blockingServer = new GameServer(entitiesFile, actionsFile);
+        for (int port : new int[] {startInBackground(blockingServer::blockingListenOn), startInBackground(testServer::nonBlockingListenOn)}) {
+            sendLooksFromManyClients(port);
+            //every client joined as its own player and is still standing in the cabin
+            String view = sendOverSocket(port, "simon: look");
+            for (int i = 0; i < CLIENTS; i++) {
+                assertTrue(view.contains("player " + (char) ('a' + i)), view);
+            }
+        }
+    }
+
+    @Test
+    void testNonBlockingClosesConnectionsWithEndlessLines() throws Exception {
+        checkEndlessLinesCloseTheConnection(startInBackground(testServer::nonBlockingListenOn));
+    }
+
+    @Test
+    void testBlockingClosesConnectionsWithEndlessLines() throws Exception {
+        checkEndlessLinesCloseTheConnection(startInBackground(testServer::blockingListenOn));
+    }
+
+    @Test
+    void testThreadPerConnectionClosesConnectionsWithEndlessLines() throws Exception {
+        ThreadPerConnectionListener listener = new ThreadPerConnectionListener(testServer, 100);
+        checkEndlessLinesCloseTheConnection(startInBackground(listener::listenOn));
+        listener.shutdown(Duration.ofMillis(500));
+    }
+
+    /**
+     * Sends a line over the limit as the first line of a connection and again within a session
+     */
+    private static void checkEndlessLinesCloseTheConnection(int port) throws Exception {
+        byte[] line = new byte[NonBlockingListener.MAX_LINE_LENGTH + 1];
+        Arrays.fill(line, (byte) 'a');
+        for (boolean inSession : new boolean[]{false, true}) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                if (inSession) {
+                    socket.getOutputStream().write((GameSession.SESSION_HANDSHAKE + "simon\n").getBytes());
+                    assertTrue(readResponse(new BufferedReader(new InputStreamReader(socket.getInputStream()))).contains("simon"));
+                }
+                socket.getOutputStream().write(line);
+                socket.getOutputStream().flush();
+                try {
+                    assertEquals(-1, socket.getInputStream().read());
+                } catch (SocketException e) {
+                    //a reset is as good as a close
+                }
+            }
+        }
+        assertTrue(sendOverSocket(port, "simon: look").contains("cabin"));
+    }
+}
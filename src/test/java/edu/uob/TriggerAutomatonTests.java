@@ -0,0 +1,84 @@
+package edu.uob;
+
+import edu.uob.Actions.TriggerAutomaton;
+import edu.uob.Actions.Vocabulary;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class TriggerAutomatonTests {
+
+    /**
+     * The sliding-window search the automaton replaced, kept as the reference behaviour
+     */
+    static SortedSet<String> slidingWindowSearch(Set<String> phrases, List<String> tokens) {
+        int maxPhraseLength = phrases.stream().mapToInt(phrase -> phrase.split("\\s+").length).max().orElse(1);
+        SortedSet<String> found = new TreeSet<>(Collections.reverseOrder());
+        for (int i = 0; i < tokens.size(); i++) {
+            StringBuilder builder = new StringBuilder();
+            for (int j = i; j < i + maxPhraseLength && j < tokens.size(); j++) {
+                if (j > i) { builder.append(" "); }
+                builder.append(tokens.get(j));
+                if (phrases.contains(builder.toString())) { found.add(builder.toString()); }
+            }
+        }
+        return found;
+    }
+
+    static Vocabulary vocabularyOf(Set<String> phrases) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String phrase : phrases) {
+            words.addAll(Arrays.asList(phrase.split(" ", -1)));
+        }
+        return new Vocabulary(Collections.emptyList(), Collections.emptyList(), words);
+    }
+
+    static SortedSet<String> find(TriggerAutomaton automaton, Vocabulary vocabulary, List<String> tokens) {
+        return automaton.findTriggers(vocabulary.tokenise(tokens));
+    }
+
+    @Test
+    void testOverlappingTriggersAreAllFoundLongestFirst() {
+        Set<String> phrases = new HashSet<>(Arrays.asList("cut", "cut down", "down", "cut down tree", "tree", "a b a", "b a c"));
+        Vocabulary vocabulary = vocabularyOf(phrases);
+        TriggerAutomaton automaton = new TriggerAutomaton(phrases, vocabulary);
+        assertEquals(Arrays.asList("tree", "down", "cut down tree", "cut down", "cut"),
+                new ArrayList<>(find(automaton, vocabulary, Arrays.asList("please", "cut", "down", "tree"))));
+        assertEquals(new TreeSet<>(Arrays.asList("a b a", "b a c")),
+                new TreeSet<>(find(automaton, vocabulary, Arrays.asList("a", "b", "a", "c"))));
+        assertTrue(find(automaton, vocabulary, Arrays.asList("cutdown", "trees")).isEmpty());
+        assertTrue(find(automaton, vocabulary, Collections.emptyList()).isEmpty());
+        assertEquals(Arrays.asList("tree", "down", "cut down tree", "cut down", "cut"),
+                new ArrayList<>(automaton.findTriggers(vocabulary.tokenise(" please\tcut  down tree\r"))));
+    }
+
+    @Test
+    void testSameResultsAsSlidingWindowOnRandomMessages() {
+        GameServer server = new GameServer(
+                Paths.get("config" + File.separator + "extended-entities.dot").toAbsolutePath().toFile(),
+                Paths.get("config" + File.separator + "extended-actions.xml").toAbsolutePath().toFile());
+        Set<String> phrases = new HashSet<>(server.gameActionMap.keySet());
+        phrases.addAll(Arrays.asList("cut down tree", "down", "a b a", "b a c", "x  y"));
+        List<String> words = new ArrayList<>();
+        for (String phrase : phrases) {
+            words.addAll(Arrays.asList(phrase.split(" ")));
+        }
+        words.addAll(Arrays.asList("the", "tree", "axe", "please", "with"));
+        Vocabulary vocabulary = vocabularyOf(phrases);
+        TriggerAutomaton automaton = new TriggerAutomaton(phrases, vocabulary);
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            List<String> tokens = new ArrayList<>();
+            int length = random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                tokens.add(words.get(random.nextInt(words.size())));
+            }
+            assertEquals(new ArrayList<>(slidingWindowSearch(phrases, tokens)),
+                    new ArrayList<>(find(automaton, vocabulary, tokens)), "for message " + tokens);
+        }
+    }
+}
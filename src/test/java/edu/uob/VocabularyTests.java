@@ -0,0 +1,55 @@
+package edu.uob;
+
+import edu.uob.Actions.TokenisedCommand;
+import edu.uob.Actions.Vocabulary;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+final class VocabularyTests {
+
+    Vocabulary vocabulary = new Vocabulary(Arrays.asList("look", "get", "inv", "inventory"),
+            Arrays.asList("axe", "cabin", "forest", "trapdoor"), Arrays.asList("open", "unlock", "cut", "down", "axe"));
+
+    @Test
+    void testEveryWordGetsOneIdAndFlags() {
+        Set<Integer> ids = new HashSet<>();
+        for (String word : Arrays.asList("look", "get", "inv", "inventory", "axe", "cabin", "forest", "trapdoor", "open", "unlock", "cut", "down")) {
+            int id = vocabulary.idOf(word);
+            assertNotEquals(Vocabulary.UNKNOWN, id, word);
+            assertEquals(word, vocabulary.wordOf(id));
+            ids.add(id);
+        }
+        assertEquals(12, ids.size());
+        assertEquals(12, vocabulary.size());
+        assertTrue(vocabulary.isBasicCommand(vocabulary.idOf("inventory")));
+        assertFalse(vocabulary.isBasicCommand(vocabulary.idOf("axe")));
+        assertTrue(vocabulary.isEntity(vocabulary.idOf("axe")));
+        assertFalse(vocabulary.isEntity(vocabulary.idOf("open")));
+        assertEquals(Vocabulary.UNKNOWN, vocabulary.idOf("sword"));
+        assertEquals(Vocabulary.UNKNOWN, vocabulary.idOf("Axe"), "lookups are exact, commands are lower cased before");
+        assertFalse(vocabulary.isEntity(Vocabulary.UNKNOWN));
+        assertNull(vocabulary.wordOf(Vocabulary.UNKNOWN));
+    }
+
+    @Test
+    void testTokenisingMatchesSplittingOnWhitespace() {
+        String[] pieces = {"look", "axe", "sword", "cut", "down", "", " ", "  ", "\t", "\r\n", "x", "cabin", "ax", "axes"};
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder command = new StringBuilder();
+            for (int j = random.nextInt(8); j > 0; j--) {
+                command.append(pieces[random.nextInt(pieces.length)]).append(random.nextBoolean() ? " " : "");
+            }
+            String trimmed = command.toString().trim();
+            List<String> expected = trimmed.isEmpty() ? Collections.emptyList() : Arrays.asList(trimmed.split("\\s+"));
+            TokenisedCommand tokens = vocabulary.tokenise(trimmed);
+            assertEquals(expected.size(), tokens.size(), trimmed);
+            for (int t = 0; t < tokens.size(); t++) {
+                assertEquals(vocabulary.idOf(expected.get(t)), tokens.id(t), trimmed);
+            }
+        }
+    }
+}